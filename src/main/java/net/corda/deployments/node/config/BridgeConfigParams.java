@@ -3,6 +3,9 @@ package net.corda.deployments.node.config;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.List;
+import java.util.stream.Collectors;
+
 @SubstitutableSource.SubstitutionTarget(targetConfig = "config/bridge_with_float.conf")
 public final class BridgeConfigParams implements SubstitutableSource {
 
@@ -70,8 +73,7 @@ public final class BridgeConfigParams implements SubstitutableSource {
     @NotNull
     private final String artemisTrustStorePassword;
     @NotNull
-    private final String floatAddress;
-    private final int floatPort;
+    private final String floatAddresses;
     @NotNull
     private final String expectedFloatCertificateSubject;
     @NotNull
@@ -94,6 +96,8 @@ public final class BridgeConfigParams implements SubstitutableSource {
     private final String bridgeTrustStorePath;
     @NotNull
     private final String bridgeTrustStorePassword;
+    @NotNull
+    private final String haConnectionString;
 
 
     public BridgeConfigParams(@NotNull String artemisAddress,
@@ -102,8 +106,7 @@ public final class BridgeConfigParams implements SubstitutableSource {
                               @NotNull String artemisKeyStorePassword,
                               @NotNull String artemisTrustStorePath,
                               @NotNull String artemisTrustStorePassword,
-                              @NotNull String floatAddress,
-                              int floatPort,
+                              @NotNull String floatAddresses,
                               @NotNull String expectedFloatCertificateSubject,
                               @NotNull String tunnelKeyStorePath,
                               @NotNull String tunnelKeyStorePassword,
@@ -114,15 +117,15 @@ public final class BridgeConfigParams implements SubstitutableSource {
                               @NotNull String bridgeKeyStorePassword,
                               @NotNull String bridgeTrustStorePath,
                               @NotNull String bridgeTrustStorePassword,
-                              @NotNull String tunnelEntryPassword) {
+                              @NotNull String tunnelEntryPassword,
+                              @NotNull String haConnectionString) {
         this.artemisAddress = artemisAddress;
         this.artemisPort = artemisPort;
         this.artemisKeyStorePath = artemisKeyStorePath;
         this.artemisKeyStorePassword = artemisKeyStorePassword;
         this.artemisTrustStorePath = artemisTrustStorePath;
         this.artemisTrustStorePassword = artemisTrustStorePassword;
-        this.floatAddress = floatAddress;
-        this.floatPort = floatPort;
+        this.floatAddresses = floatAddresses;
         this.expectedFloatCertificateSubject = expectedFloatCertificateSubject;
         this.tunnelKeyStorePath = tunnelKeyStorePath;
         this.tunnelKeyStorePassword = tunnelKeyStorePassword;
@@ -134,6 +137,7 @@ public final class BridgeConfigParams implements SubstitutableSource {
         this.bridgeTrustStorePath = bridgeTrustStorePath;
         this.bridgeTrustStorePassword = bridgeTrustStorePassword;
         this.tunnelEntryPassword = tunnelEntryPassword;
+        this.haConnectionString = haConnectionString;
     }
 
     public static BridgeConfigParamsBuilder builder() {
@@ -164,12 +168,8 @@ public final class BridgeConfigParams implements SubstitutableSource {
         return artemisTrustStorePassword;
     }
 
-    public String getFloatAddress() {
-        return floatAddress;
-    }
-
-    public int getFloatPort() {
-        return floatPort;
+    public String getFloatAddresses() {
+        return floatAddresses;
     }
 
     public String getExpectedFloatCertificateSubject() {
@@ -216,6 +216,10 @@ public final class BridgeConfigParams implements SubstitutableSource {
         return tunnelEntryPassword;
     }
 
+    public String getHaConnectionString() {
+        return haConnectionString;
+    }
+
     public static final class BridgeConfigParamsBuilder {
         private String artemisAddress;
         private int artemisPort;
@@ -223,8 +227,7 @@ public final class BridgeConfigParams implements SubstitutableSource {
         private String artemisKeyStorePassword;
         private String artemisTrustStorePath;
         private String artemisTrustStorePassword;
-        private String floatAddress;
-        private int floatPort;
+        private String floatAddresses;
         private String expectedFloatCertificateSubject;
         private String tunnelKeyStorePath;
         private String tunnelKeyStorePassword;
@@ -236,6 +239,7 @@ public final class BridgeConfigParams implements SubstitutableSource {
         private String bridgeTrustStorePath;
         private String bridgeTrustStorePassword;
         private String bridgeTunnelEntryPassword;
+        private String haConnectionString;
 
         private BridgeConfigParamsBuilder() {
         }
@@ -271,13 +275,10 @@ public final class BridgeConfigParams implements SubstitutableSource {
             return this;
         }
 
-        public BridgeConfigParamsBuilder withFloatAddress(String floatAddress) {
-            this.floatAddress = floatAddress;
-            return this;
-        }
-
-        public BridgeConfigParamsBuilder withFloatPort(int floatPort) {
-            this.floatPort = floatPort;
+        public BridgeConfigParamsBuilder withFloatAddresses(List<String> floatAddresses, int floatPort) {
+            this.floatAddresses = floatAddresses.stream()
+                    .map(floatAddress -> "\"" + floatAddress + ":" + floatPort + "\"")
+                    .collect(Collectors.joining(", "));
             return this;
         }
 
@@ -336,10 +337,15 @@ public final class BridgeConfigParams implements SubstitutableSource {
             return this;
         }
 
+        public BridgeConfigParamsBuilder withHaConnectionString(String haConnectionString) {
+            this.haConnectionString = haConnectionString;
+            return this;
+        }
+
         @NotNull
         @Contract(value = " -> new", pure = true)
         public BridgeConfigParams build() {
-            return new BridgeConfigParams(artemisAddress, artemisPort, artemisKeyStorePath, artemisKeyStorePassword, artemisTrustStorePath, artemisTrustStorePassword, floatAddress, floatPort, expectedFloatCertificateSubject, tunnelKeyStorePath, tunnelKeyStorePassword, tunnelTrustStorePath, tunnelTrustStorePassword, networkParamsPath, bridgeKeyStorePath, bridgeKeyStorePassword, bridgeTrustStorePath, bridgeTrustStorePassword, bridgeTunnelEntryPassword);
+            return new BridgeConfigParams(artemisAddress, artemisPort, artemisKeyStorePath, artemisKeyStorePassword, artemisTrustStorePath, artemisTrustStorePassword, floatAddresses, expectedFloatCertificateSubject, tunnelKeyStorePath, tunnelKeyStorePassword, tunnelTrustStorePath, tunnelTrustStorePassword, networkParamsPath, bridgeKeyStorePath, bridgeKeyStorePassword, bridgeTrustStorePath, bridgeTrustStorePassword, bridgeTunnelEntryPassword, haConnectionString);
         }
     }
 }
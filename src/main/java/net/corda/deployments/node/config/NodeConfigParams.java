@@ -29,6 +29,14 @@ public class NodeConfigParams implements SubstitutableSource {
     private final String dataSourceUsername;
     private final String dataSourcePassword;
     private final String azureKeyVaultConfPath;
+    private final Integer flowThreadPoolSize;
+    private final Integer rpcThreadPoolSize;
+    private final Integer dataSourceMaxPoolSize;
+    private final Integer transactionCacheSizeMegaBytes;
+    private final Integer attachmentContentCacheSizeMegaBytes;
+    private final Integer maximumMessagingBatchSize;
+    private final Integer p2pConfirmationWindowSize;
+    private final Boolean databaseRunMigration;
 
 
     public static final String NODE_BASE_DIR = "/opt/corda";
@@ -94,7 +102,15 @@ public class NodeConfigParams implements SubstitutableSource {
                             String dataSourceURL,
                             String dataSourceUsername,
                             String dataSourcePassword,
-                            String azureKeyVaultConfPath) {
+                            String azureKeyVaultConfPath,
+                            Integer flowThreadPoolSize,
+                            Integer rpcThreadPoolSize,
+                            Integer dataSourceMaxPoolSize,
+                            Integer transactionCacheSizeMegaBytes,
+                            Integer attachmentContentCacheSizeMegaBytes,
+                            Integer maximumMessagingBatchSize,
+                            Integer p2pConfirmationWindowSize,
+                            Boolean databaseRunMigration) {
         this.x500Name = x500Name;
         this.emailAddress = emailAddress;
         this.nodeSSLKeystorePassword = nodeSSLKeystorePassword;
@@ -118,6 +134,14 @@ public class NodeConfigParams implements SubstitutableSource {
         this.dataSourceUsername = dataSourceUsername;
         this.dataSourcePassword = dataSourcePassword;
         this.azureKeyVaultConfPath = azureKeyVaultConfPath;
+        this.flowThreadPoolSize = flowThreadPoolSize;
+        this.rpcThreadPoolSize = rpcThreadPoolSize;
+        this.dataSourceMaxPoolSize = dataSourceMaxPoolSize;
+        this.transactionCacheSizeMegaBytes = transactionCacheSizeMegaBytes;
+        this.attachmentContentCacheSizeMegaBytes = attachmentContentCacheSizeMegaBytes;
+        this.maximumMessagingBatchSize = maximumMessagingBatchSize;
+        this.p2pConfirmationWindowSize = p2pConfirmationWindowSize;
+        this.databaseRunMigration = databaseRunMigration;
     }
 
     public String getX500Name() {
@@ -212,6 +236,38 @@ public class NodeConfigParams implements SubstitutableSource {
         return azureKeyVaultConfPath;
     }
 
+    public Integer getFlowThreadPoolSize() {
+        return flowThreadPoolSize;
+    }
+
+    public Integer getRpcThreadPoolSize() {
+        return rpcThreadPoolSize;
+    }
+
+    public Integer getDataSourceMaxPoolSize() {
+        return dataSourceMaxPoolSize;
+    }
+
+    public Integer getTransactionCacheSizeMegaBytes() {
+        return transactionCacheSizeMegaBytes;
+    }
+
+    public Integer getAttachmentContentCacheSizeMegaBytes() {
+        return attachmentContentCacheSizeMegaBytes;
+    }
+
+    public Integer getMaximumMessagingBatchSize() {
+        return maximumMessagingBatchSize;
+    }
+
+    public Integer getP2pConfirmationWindowSize() {
+        return p2pConfirmationWindowSize;
+    }
+
+    public Boolean getDatabaseRunMigration() {
+        return databaseRunMigration;
+    }
+
     public static NodeConfigParamsBuilder builder() {
         return new NodeConfigParamsBuilder();
     }
@@ -241,6 +297,14 @@ public class NodeConfigParams implements SubstitutableSource {
         private String dataSourceUsername;
         private String dataSourcePassword;
         private String azureKeyVaultConfPath;
+        private Integer flowThreadPoolSize;
+        private Integer rpcThreadPoolSize;
+        private Integer dataSourceMaxPoolSize;
+        private Integer transactionCacheSizeMegaBytes;
+        private Integer attachmentContentCacheSizeMegaBytes;
+        private Integer maximumMessagingBatchSize;
+        private Integer p2pConfirmationWindowSize;
+        private Boolean databaseRunMigration;
 
         private NodeConfigParamsBuilder() {
         }
@@ -366,11 +430,53 @@ public class NodeConfigParams implements SubstitutableSource {
             return this;
         }
 
+        public NodeConfigParamsBuilder withFlowThreadPoolSize(Integer flowThreadPoolSize) {
+            this.flowThreadPoolSize = flowThreadPoolSize;
+            return this;
+        }
+
+        public NodeConfigParamsBuilder withRpcThreadPoolSize(Integer rpcThreadPoolSize) {
+            this.rpcThreadPoolSize = rpcThreadPoolSize;
+            return this;
+        }
+
+        public NodeConfigParamsBuilder withDataSourceMaxPoolSize(Integer dataSourceMaxPoolSize) {
+            this.dataSourceMaxPoolSize = dataSourceMaxPoolSize;
+            return this;
+        }
+
+        public NodeConfigParamsBuilder withTransactionCacheSizeMegaBytes(Integer transactionCacheSizeMegaBytes) {
+            this.transactionCacheSizeMegaBytes = transactionCacheSizeMegaBytes;
+            return this;
+        }
+
+        public NodeConfigParamsBuilder withAttachmentContentCacheSizeMegaBytes(Integer attachmentContentCacheSizeMegaBytes) {
+            this.attachmentContentCacheSizeMegaBytes = attachmentContentCacheSizeMegaBytes;
+            return this;
+        }
+
+        public NodeConfigParamsBuilder withMaximumMessagingBatchSize(Integer maximumMessagingBatchSize) {
+            this.maximumMessagingBatchSize = maximumMessagingBatchSize;
+            return this;
+        }
+
+        public NodeConfigParamsBuilder withP2pConfirmationWindowSize(Integer p2pConfirmationWindowSize) {
+            this.p2pConfirmationWindowSize = p2pConfirmationWindowSize;
+            return this;
+        }
+
+        public NodeConfigParamsBuilder withDatabaseRunMigration(Boolean databaseRunMigration) {
+            this.databaseRunMigration = databaseRunMigration;
+            return this;
+        }
+
         public NodeConfigParams build() {
             return new NodeConfigParams(x500Name, emailAddress, nodeSSLKeystorePassword, nodeTrustStorePassword, p2pAddress, p2pPort,
                     artemisServerAddress, artemisServerPort, artemisSSLKeyStorePath, artemisSSLKeyStorePass, artemisTrustStorePath,
                     artemisTrustStorePass, rpcPort, rpcAdminPort, doormanURL, networkMapURL, rpcUsername, rpcPassword, dataSourceClassName,
-                    dataSourceURL, dataSourceUsername, dataSourcePassword, azureKeyVaultConfPath);
+                    dataSourceURL, dataSourceUsername, dataSourcePassword, azureKeyVaultConfPath, flowThreadPoolSize, rpcThreadPoolSize,
+                    dataSourceMaxPoolSize, transactionCacheSizeMegaBytes, attachmentContentCacheSizeMegaBytes, maximumMessagingBatchSize,
+                    p2pConfirmationWindowSize, databaseRunMigration);
         }
     }
 }
@@ -0,0 +1,89 @@
+package net.corda.deployments.node.config;
+
+@SubstitutableSource.SubstitutionTarget(targetConfig = "config/node_log4j2.xml")
+public class NodeLoggingConfigParams implements SubstitutableSource {
+
+    private final String logDirectory;
+    private final String logLevel;
+    private final Integer maxFileSizeMegaBytes;
+    private final Integer maxRolledFiles;
+    private final Integer asyncQueueSize;
+
+    public static final String NODE_LOGS_DIR = NodeConfigParams.NODE_BASE_DIR + "/logs";
+    public static final String NODE_LOGGING_CONFIG_DIR = "/etc/corda-logging";
+    public static final String NODE_LOGGING_CONFIG_FILENAME = "log4j2.xml";
+    public static final String NODE_LOGGING_CONFIG_PATH = NODE_LOGGING_CONFIG_DIR + "/" + NODE_LOGGING_CONFIG_FILENAME;
+
+    public NodeLoggingConfigParams(String logDirectory, String logLevel, Integer maxFileSizeMegaBytes, Integer maxRolledFiles,
+                                   Integer asyncQueueSize) {
+        this.logDirectory = logDirectory;
+        this.logLevel = logLevel;
+        this.maxFileSizeMegaBytes = maxFileSizeMegaBytes;
+        this.maxRolledFiles = maxRolledFiles;
+        this.asyncQueueSize = asyncQueueSize;
+    }
+
+    public String getLogDirectory() {
+        return logDirectory;
+    }
+
+    public String getLogLevel() {
+        return logLevel;
+    }
+
+    public Integer getMaxFileSizeMegaBytes() {
+        return maxFileSizeMegaBytes;
+    }
+
+    public Integer getMaxRolledFiles() {
+        return maxRolledFiles;
+    }
+
+    public Integer getAsyncQueueSize() {
+        return asyncQueueSize;
+    }
+
+    public static NodeLoggingConfigParamsBuilder builder() {
+        return new NodeLoggingConfigParamsBuilder();
+    }
+
+    public static final class NodeLoggingConfigParamsBuilder {
+        private String logDirectory;
+        private String logLevel;
+        private Integer maxFileSizeMegaBytes;
+        private Integer maxRolledFiles;
+        private Integer asyncQueueSize;
+
+        private NodeLoggingConfigParamsBuilder() {
+        }
+
+        public NodeLoggingConfigParamsBuilder withLogDirectory(String logDirectory) {
+            this.logDirectory = logDirectory;
+            return this;
+        }
+
+        public NodeLoggingConfigParamsBuilder withLogLevel(String logLevel) {
+            this.logLevel = logLevel;
+            return this;
+        }
+
+        public NodeLoggingConfigParamsBuilder withMaxFileSizeMegaBytes(Integer maxFileSizeMegaBytes) {
+            this.maxFileSizeMegaBytes = maxFileSizeMegaBytes;
+            return this;
+        }
+
+        public NodeLoggingConfigParamsBuilder withMaxRolledFiles(Integer maxRolledFiles) {
+            this.maxRolledFiles = maxRolledFiles;
+            return this;
+        }
+
+        public NodeLoggingConfigParamsBuilder withAsyncQueueSize(Integer asyncQueueSize) {
+            this.asyncQueueSize = asyncQueueSize;
+            return this;
+        }
+
+        public NodeLoggingConfigParams build() {
+            return new NodeLoggingConfigParams(logDirectory, logLevel, maxFileSizeMegaBytes, maxRolledFiles, asyncQueueSize);
+        }
+    }
+}
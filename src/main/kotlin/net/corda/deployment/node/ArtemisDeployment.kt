@@ -4,19 +4,27 @@ import com.microsoft.azure.management.compute.Disk
 import io.kubernetes.client.custom.IntOrString
 import io.kubernetes.client.custom.Quantity
 import io.kubernetes.client.openapi.models.*
+import net.corda.deployment.node.kubernetes.ARTEMIS_POD_LABELS
+import net.corda.deployment.node.kubernetes.PinnedImages
+import net.corda.deployment.node.kubernetes.WorkloadPlacement
 import net.corda.deployment.node.storage.AzureFilesDirectory
 import net.corda.deployments.node.config.ArtemisConfigParams
 
 private const val ARTEMIS_PORT_NAME = "artemis-port"
+private const val ARTEMIS_BROKER_SOURCE_DIR = "/tmp/artemis-broker"
+//kept on the same volume as the journal so a restarted pod only re-copies the instance when its config has changed
+private const val ARTEMIS_BROKER_SUB_PATH = "broker-instance"
 
 fun createArtemisDeployment(
     devNamespace: String,
     brokerDirectory: AzureFilesDirectory,
     storesShare: AzureFilesDirectory,
-    dataDisk: Disk?
+    dataDisk: Disk?,
+    images: PinnedImages
 ): V1Deployment {
     val dataMountName = "artemis-data"
-    val brokerBaseDirMountName = "artemis-config"
+    val brokerSourceMountName = "artemis-config"
+    val brokerBaseDirMountName = "artemis-broker"
     val storesMountName = "artemis-stores"
     val artemisDeployment = V1DeploymentBuilder()
         .withKind("Deployment")
@@ -28,25 +36,62 @@ fun createArtemisDeployment(
         .endMetadata()
         .withNewSpec()
         .withNewSelector()
-        .withMatchLabels(listOf("run" to "artemis").toMap())
+        .withMatchLabels(ARTEMIS_POD_LABELS)
         .endSelector()
         .withReplicas(1)
         .withNewTemplate()
         .withNewMetadata()
-        .withLabels(listOf("run" to "artemis").toMap())
+        .withLabels(ARTEMIS_POD_LABELS)
         .endMetadata()
         .withNewSpec()
+        .withNodeSelector(WorkloadPlacement.ARTEMIS.nodeSelector)
+        .withTolerations(WorkloadPlacement.ARTEMIS.tolerations())
+        .addNewInitContainer()
+        .withName("materialise-broker")
+        .withImage(images.pinned(SETUP_IMAGE))
+        .withImagePullPolicy("IfNotPresent")
+        .withCommand("materialise-artemis-broker")
+        .withEnv(
+            keyValueEnvVar("BROKER_SOURCE_DIR", ARTEMIS_BROKER_SOURCE_DIR),
+            keyValueEnvVar("BROKER_BASE_DIR", ArtemisConfigParams.ARTEMIS_BROKER_BASE_DIR)
+        )
+        .withTerminationMessagePolicy("FallbackToLogsOnError")
+        .withVolumeMounts(
+            V1VolumeMountBuilder()
+                .withName(brokerSourceMountName)
+                .withMountPath(ARTEMIS_BROKER_SOURCE_DIR)
+                .withReadOnly(true).build(),
+            brokerBaseMount(dataDisk, dataMountName, brokerBaseDirMountName)
+        )
+        .endInitContainer()
         .addNewContainer()
         .withName("artemis")
-        .withImage("corda/enterprise-setup-4.5.1:latest")
+        .withImage(images.pinned(SETUP_IMAGE))
         .withImagePullPolicy("IfNotPresent")
         .withCommand("run-artemis")
-        .withEnv(V1EnvVarBuilder().withName("JAVA_ARGS").withValue("-XX:+UseParallelGC -Xms512M -Xmx768M").build())
+        .withEnv(V1EnvVarBuilder().withName("JAVA_ARGS").withValue("-Xshare:auto -XX:+UseParallelGC -Xms512M -Xmx768M").build())
         .withPorts(
             V1ContainerPortBuilder().withName(ARTEMIS_PORT_NAME).withContainerPort(
                 ArtemisConfigParams.ARTEMIS_ACCEPTOR_PORT
             ).build()
-        ).withNewResources()
+        )
+        .withNewReadinessProbe()
+        .withNewTcpSocket()
+        .withPort(IntOrString(ARTEMIS_PORT_NAME))
+        .endTcpSocket()
+        .withInitialDelaySeconds(5)
+        .withPeriodSeconds(5)
+        .endReadinessProbe()
+        .withNewLivenessProbe()
+        .withNewTcpSocket()
+        .withPort(IntOrString(ARTEMIS_PORT_NAME))
+        .endTcpSocket()
+        .withInitialDelaySeconds(60)
+        .withPeriodSeconds(20)
+        .withTimeoutSeconds(5)
+        .withFailureThreshold(3)
+        .endLivenessProbe()
+        .withNewResources()
         .withRequests(
             listOf(
                 "memory" to Quantity("1024Mi"), "cpu" to Quantity(
@@ -62,9 +107,7 @@ fun createArtemisDeployment(
                         .withName(dataMountName)
                         .withMountPath(ArtemisConfigParams.ARTEMIS_DATA_DIR_PATH).build()
                 },
-                V1VolumeMountBuilder()
-                    .withName(brokerBaseDirMountName)
-                    .withMountPath(ArtemisConfigParams.ARTEMIS_BROKER_BASE_DIR).build(),
+                brokerBaseMount(dataDisk, dataMountName, brokerBaseDirMountName),
                 V1VolumeMountBuilder()
                     .withName(storesMountName)
                     .withMountPath(ArtemisConfigParams.ARTEMIS_STORES_DIR).build()
@@ -73,7 +116,15 @@ fun createArtemisDeployment(
         .endContainer()
         .withVolumes(
             listOfNotNull(
-                brokerDirectory.toK8sMount(brokerBaseDirMountName, false),
+                brokerDirectory.toK8sMount(brokerSourceMountName, true),
+                //without a data disk the instance is rebuilt from the share on every start
+                if (dataDisk == null) {
+                    V1VolumeBuilder()
+                        .withName(brokerBaseDirMountName)
+                        .withNewEmptyDir()
+                        .endEmptyDir()
+                        .build()
+                } else null,
                 storesShare.toK8sMount(storesMountName, true),
                 dataDisk?.let {
                     V1VolumeBuilder()
@@ -103,6 +154,19 @@ fun createArtemisDeployment(
 
 }
 
+private fun brokerBaseMount(dataDisk: Disk?, dataMountName: String, brokerBaseDirMountName: String): V1VolumeMount {
+    return if (dataDisk != null) {
+        V1VolumeMountBuilder()
+            .withName(dataMountName)
+            .withMountPath(ArtemisConfigParams.ARTEMIS_BROKER_BASE_DIR)
+            .withSubPath(ARTEMIS_BROKER_SUB_PATH).build()
+    } else {
+        V1VolumeMountBuilder()
+            .withName(brokerBaseDirMountName)
+            .withMountPath(ArtemisConfigParams.ARTEMIS_BROKER_BASE_DIR).build()
+    }
+}
+
 fun createArtemisService(artemisDeployment: V1Deployment): V1Service {
 
     return V1ServiceBuilder()
@@ -5,9 +5,11 @@ import com.microsoft.azure.management.Azure
 import com.microsoft.azure.management.compute.Disk
 import com.microsoft.azure.management.compute.DiskSkuTypes
 import com.microsoft.azure.management.resources.ResourceGroup
+import com.microsoft.azure.management.resources.fluentcore.arm.AvailabilityZoneId
 import io.kubernetes.client.openapi.ApiClient
 import io.kubernetes.client.openapi.models.V1Deployment
 import io.kubernetes.client.openapi.models.V1Service
+import net.corda.deployment.node.kubernetes.PinnedImages
 import net.corda.deployment.node.kubernetes.SecretCreator
 import net.corda.deployment.node.kubernetes.simpleApply
 import net.corda.deployment.node.storage.AzureFilesDirectory
@@ -20,19 +22,21 @@ class ArtemisSetup(
     private val azure: Azure,
     private val resourceGroup: ResourceGroup,
     private val namespace: String,
-    private val apiSource: () -> ApiClient
+    private val apiSource: () -> ApiClient,
+    private val images: PinnedImages,
+    private val zone: String? = null
 ) {
 
 //    private var secrets: ArtemisSecrets? = null
 
     private fun createDiskForArtemis(): Disk {
-        return azure.disks().define("artemis-disk")
+        val diskDefinition = azure.disks().define("artemis-disk")
             .withRegion(resourceGroup.region())
             .withExistingResourceGroup(resourceGroup)
             .withData()
             .withSizeInGB(500)
             .withSku(DiskSkuTypes.PREMIUM_LRS)
-            .create()
+        return (zone?.let { diskDefinition.withAvailabilityZone(AvailabilityZoneId.fromString(it)) } ?: diskDefinition).create()
     }
 
     fun generateArtemisSecrets(): ArtemisSecrets {
@@ -72,7 +76,8 @@ class ArtemisSetup(
             artemisSecrets,
             artemisShare,
             nodeArtemisShare,
-            bridgeArtemisShare
+            bridgeArtemisShare,
+            images
         )
         simpleApply.create(generateArtemisStoresJob, namespace, apiSource)
         waitForJob(generateArtemisStoresJob, namespace, apiSource)
@@ -89,14 +94,15 @@ class ArtemisSetup(
             jobName,
             artemisSecrets,
             artemisStoresDir,
-            artemisBrokerDir
+            artemisBrokerDir,
+            images
         )
         simpleApply.create(configureArtemisJob, namespace, apiSource)
         waitForJob(configureArtemisJob, namespace, apiSource)
         dumpLogsForJob(configureArtemisJob, namespace, apiSource)
     }
 
-    fun deploy(
+    suspend fun deploy(
         storesDirectory: AzureFilesDirectory,
         brokerDirectory: AzureFilesDirectory,
         useAzureDiskForData: Boolean = false
@@ -106,10 +112,12 @@ class ArtemisSetup(
         } else {
             null
         }
-        val deployment = createArtemisDeployment(namespace, brokerDirectory, storesDirectory, disk)
+        val deployment = createArtemisDeployment(namespace, brokerDirectory, storesDirectory, disk, images)
         val service = createArtemisService(deployment)
         simpleApply.create(deployment, namespace, apiSource)
         simpleApply.create(service, namespace, apiSource)
+        //nodes and the bridge connect to the broker as soon as they start, so they must not be deployed before it is accepting
+        waitForRollout(deployment.metadata?.name!!, namespace, apiSource)
         return ArtemisDeployment(deployment, service)
     }
 }
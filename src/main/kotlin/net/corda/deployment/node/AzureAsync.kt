@@ -0,0 +1,23 @@
+package net.corda.deployment.node
+
+import com.microsoft.azure.management.resources.fluentcore.model.Creatable
+import com.microsoft.rest.ServiceCallback
+import kotlinx.coroutines.suspendCancellableCoroutine
+import kotlin.coroutines.resume
+import kotlin.coroutines.resumeWithException
+
+//suspends on the sdk's own async create rather than parking a thread for the lifetime of the ARM operation
+suspend fun <T> Creatable<T>.createSuspending(): T {
+    return suspendCancellableCoroutine { continuation ->
+        val serviceFuture = this.createAsync(object : ServiceCallback<T> {
+            override fun failure(t: Throwable) {
+                continuation.resumeWithException(t)
+            }
+
+            override fun success(result: T) {
+                continuation.resume(result)
+            }
+        })
+        continuation.invokeOnCancellation { serviceFuture.cancel(true) }
+    }
+}
@@ -3,12 +3,22 @@ package net.corda.deployment.node
 import io.kubernetes.client.custom.IntOrString
 import io.kubernetes.client.custom.Quantity
 import io.kubernetes.client.openapi.models.*
+import net.corda.deployment.node.kubernetes.ARTEMIS_POD_LABELS
+import net.corda.deployment.node.kubernetes.ConfigMapFile
+import net.corda.deployment.node.kubernetes.HOST_TOPOLOGY_KEY
+import net.corda.deployment.node.kubernetes.PinnedImages
+import net.corda.deployment.node.kubernetes.WorkloadPlacement
+import net.corda.deployment.node.kubernetes.podAffinity
 import net.corda.deployment.node.storage.AzureFilesDirectory
+import net.corda.deployments.node.config.ArtemisConfigParams
 import net.corda.deployments.node.config.BridgeConfigParams
 
+const val BRIDGE_DEPLOYMENT_NAME = "bridge"
+const val FIREWALL_IMAGE = "corda/enterprise-firewall:4.5.1"
+
 fun createBridgeDeployment(
     namespace: String,
-    bridgeConfigShare: AzureFilesDirectory,
+    bridgeConfigFile: ConfigMapFile,
     tunnelStoresShare: AzureFilesDirectory,
     artemisStoresShare: AzureFilesDirectory,
     bridgeStoresShare: AzureFilesDirectory,
@@ -18,8 +28,11 @@ fun createBridgeDeployment(
     bridgeStoresSecretName: String,
     bridgeKeyStorePasswordKey: String,
     nodeStoresSecretName: String,
-    sharedTrustStorePasswordKey: String
+    sharedTrustStorePasswordKey: String,
+    images: PinnedImages,
+    haMode: BridgeHaMode = BridgeHaMode.Standalone
 ): V1Deployment {
+    val replicas = haMode.replicas
 
     val configDirMountName = "config-dir"
     val tunnelStoresDirMountName = "tunnel-dir"
@@ -32,30 +45,44 @@ fun createBridgeDeployment(
         .withApiVersion("apps/v1")
         .withNewMetadata()
         .withNamespace(namespace)
-        .withName("bridge")
+        .withName(BRIDGE_DEPLOYMENT_NAME)
         .withLabels(listOf("dmz" to "false", "run" to "bridge").toMap())
         .endMetadata()
         .withNewSpec()
         .withNewSelector()
         .withMatchLabels(listOf("run" to "bridge").toMap())
         .endSelector()
-        .withReplicas(1)
+        .withReplicas(replicas)
+        //a replacement must stay ready this long before the rollout takes down the next old replica
+        .withMinReadySeconds(BRIDGE_MIN_READY_SECONDS)
         .withNewStrategy()
         .withType("RollingUpdate")
         .withNewRollingUpdate()
-        .withMaxSurge(IntOrString(0))
-        .withMaxUnavailable(IntOrString(1))
+        //with a single bridge there is no standby to take over, so the old pod must stop before the new one starts
+        .withMaxSurge(IntOrString(if (replicas > 1) 1 else 0))
+        .withMaxUnavailable(IntOrString(if (replicas > 1) 0 else 1))
         .endRollingUpdate()
         .endStrategy()
         .withNewTemplate()
         .withNewMetadata()
         .withLabels(listOf("run" to "bridge").toMap())
+        .withAnnotations(bridgeConfigFile.podAnnotations)
         .endMetadata()
         .withNewSpec()
+        .withNodeSelector(WorkloadPlacement.ARTEMIS.nodeSelector)
+        .withTolerations(WorkloadPlacement.ARTEMIS.tolerations())
+        //stay in the broker's zone, but keep replicas on separate hosts so a standby survives a host failure
+        .withAffinity(
+            podAffinity(
+                colocateWith = ARTEMIS_POD_LABELS,
+                spreadFrom = listOf("run" to "bridge").toMap(),
+                spreadTopologyKeys = listOf(HOST_TOPOLOGY_KEY)
+            )
+        )
         .addNewContainer()
         .withName("bridge")
-        .withImage("corda/enterprise-firewall:4.5.1")
-        .withImagePullPolicy("Always")
+        .withImage(images.pinned(FIREWALL_IMAGE))
+        .withImagePullPolicy("IfNotPresent")
         .withCommand("run-firewall")
         .withEnv(
             V1EnvVarBuilder().withName("JVM_ARGS").withValue("-Xms512M -XX:MinHeapFreeRatio=20 -XX:MaxHeapFreeRatio=40 -XX:GCTimeRatio=4 -XX:AdaptiveSizePolicyWeight=80").build(),
@@ -109,6 +136,14 @@ fun createBridgeDeployment(
             ).toMap()
         )
         .endResources()
+        .withNewReadinessProbe()
+        .withNewExec()
+        .withCommand(establishedConnectionCheck(listOf(ArtemisConfigParams.ARTEMIS_ACCEPTOR_PORT) + haMode.electionPorts))
+        .endExec()
+        .withInitialDelaySeconds(20)
+        .withPeriodSeconds(10)
+        .withFailureThreshold(3)
+        .endReadinessProbe()
         .withVolumeMounts(
             listOfNotNull(
                 V1VolumeMountBuilder()
@@ -131,7 +166,7 @@ fun createBridgeDeployment(
         .endContainer()
         .withVolumes(
             listOfNotNull(
-                bridgeConfigShare.toK8sMount(configDirMountName, true),
+                configMapVolume(configDirMountName, bridgeConfigFile),
                 tunnelStoresShare.toK8sMount(tunnelStoresDirMountName, true),
                 networkParametersShare.toK8sMount(networkParametersMountName, true),
                 artemisStoresShare.toK8sMount(artemisStoresDirMountName, true),
@@ -150,4 +185,15 @@ fun createBridgeDeployment(
         .endSpec()
         .build()
 
-}
\ No newline at end of file
+}
+private const val BRIDGE_MIN_READY_SECONDS = 30
+
+//the launcher process is up long before the bridge is usable, the active bridge holds a connection to artemis and
+//a standby holds one to its election service, so an established connection to either shows it can take over
+private fun establishedConnectionCheck(ports: List<Int>): List<String> {
+    val remotePorts = ports.joinToString("|") { "%04X".format(it) }
+    return listOf(
+        "sh", "-c",
+        "cat /proc/net/tcp /proc/net/tcp6 2>/dev/null | grep -qE '^ *[0-9]+: [0-9A-F]+:[0-9A-F]{4} [0-9A-F]+:($remotePorts) 01 '"
+    )
+}
@@ -0,0 +1,39 @@
+package net.corda.deployment.node
+
+sealed class BridgeHaMode(val replicas: Int) {
+
+    abstract val haConnectionString: String
+
+    //ports a bridge holds a connection to once it has joined the leader election as a standby
+    abstract val electionPorts: List<Int>
+
+    //in-process election, only valid for a single bridge replica
+    object Standalone : BridgeHaMode(1) {
+        override val haConnectionString: String = "bully://localhost"
+        override val electionPorts: List<Int> = emptyList()
+    }
+
+    class ExternalZookeeper(
+        private val zookeeperConnectionString: String,
+        replicas: Int = 2
+    ) : BridgeHaMode(replicas) {
+        override val haConnectionString: String
+            get() = zookeeperConnectionString
+        override val electionPorts: List<Int>
+            get() = zookeeperConnectionString.substringAfter("://").split(",").map {
+                it.substringBefore("/").substringAfterLast(":", ZOOKEEPER_CLIENT_PORT.toString()).toInt()
+            }.distinct()
+    }
+
+    //a single zookeeper deployed alongside the bridge, good enough for testing failover but not a production quorum
+    class InClusterZookeeper(replicas: Int = 2) : BridgeHaMode(replicas) {
+        override val haConnectionString: String = "zk://$BRIDGE_ZOOKEEPER_NAME:$ZOOKEEPER_CLIENT_PORT"
+        override val electionPorts: List<Int> = listOf(ZOOKEEPER_CLIENT_PORT)
+    }
+
+    init {
+        if (replicas < 1) {
+            throw IllegalArgumentException("bridge must have at least one replica")
+        }
+    }
+}
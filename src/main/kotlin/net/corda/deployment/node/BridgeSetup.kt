@@ -4,82 +4,123 @@ import com.azure.storage.file.share.ShareFileClient
 import io.kubernetes.client.openapi.ApiClient
 import io.kubernetes.client.openapi.apis.AppsV1Api
 import io.kubernetes.client.openapi.models.V1Deployment
-import io.kubernetes.client.openapi.models.V1EnvVarBuilder
 import net.corda.deployment.node.config.ConfigGenerators
+import net.corda.deployment.node.kubernetes.ConfigMapCreator
+import net.corda.deployment.node.kubernetes.ConfigMapFile
+import net.corda.deployment.node.kubernetes.PinnedImages
 import net.corda.deployment.node.kubernetes.SecretCreator
 import net.corda.deployment.node.kubernetes.simpleApply
 import net.corda.deployment.node.storage.AzureFileShareCreator
 import net.corda.deployment.node.storage.AzureFilesDirectory
-import net.corda.deployment.node.storage.uploadFromByteArray
 import net.corda.deployments.node.config.ArtemisConfigParams
 import net.corda.deployments.node.config.BridgeConfigParams
 import net.corda.deployments.node.config.FloatConfigParams
 import net.corda.deployments.node.config.TunnelConfigParams
 import org.apache.commons.lang3.RandomStringUtils
+import java.time.Instant
 
 class BridgeSetup(
     val shareCreator: AzureFileShareCreator,
     val namespace: String,
-    val api: () -> ApiClient
+    val api: () -> ApiClient,
+    val images: PinnedImages,
+    val haMode: BridgeHaMode = BridgeHaMode.Standalone
 ) {
 
 
     private lateinit var deployment: BridgeDeployment
-    private lateinit var nodeStoreSecrets: NodeStoresSecrets
     private lateinit var artemisSecrets: ArtemisSecrets
     private lateinit var networkShare: AzureFilesDirectory
     private lateinit var tunnelSecrets: FirewallTunnelSecrets
-    private lateinit var configShare: AzureFilesDirectory
+    private lateinit var configFile: ConfigMapFile
     private var config: String? = null
     private var artemisComponents: BridgeArtemisComponents? = null
     private var tunnelComponents: BridgeTunnelComponents? = null
     private var bridgeStores: BridgeStores? = null
     private var bridgeStoreSecrets: BridgeSecrets? = null
+    private val importedNodeKeyStores: MutableList<NodeKeyStoreImport> = mutableListOf()
 
     fun generateBridgeStoreSecrets(): BridgeSecrets {
-        val bridgeCertificatesSecretName = "bridge-stores-secrets"
-        val bridgeSSLKeyStorePasswordSecretKey = "bridgesslpassword"
         SecretCreator.createStringSecret(
-            bridgeCertificatesSecretName,
+            BRIDGE_STORES_SECRET_NAME,
             listOf(
-                bridgeSSLKeyStorePasswordSecretKey to RandomStringUtils.randomAlphanumeric(20)
+                BRIDGE_SSL_KEYSTORE_PASSWORD_KEY to RandomStringUtils.randomAlphanumeric(20)
             ).toMap(),
             namespace,
             api
         )
 
-        return BridgeSecrets(bridgeCertificatesSecretName, bridgeSSLKeyStorePasswordSecretKey).also {
+        return BridgeSecrets(BRIDGE_STORES_SECRET_NAME, BRIDGE_SSL_KEYSTORE_PASSWORD_KEY).also {
             this.bridgeStoreSecrets = it
         }
     }
 
+    //used when adding nodes to a bridge deployed by an earlier run
+    fun useExistingBridgeStoreSecrets(): BridgeSecrets {
+        if (!SecretCreator.secretExists(BRIDGE_STORES_SECRET_NAME, namespace, api)) {
+            throw IllegalStateException("bridge ssl secrets do not exist in namespace $namespace - has the bridge been deployed?")
+        }
+        return BridgeSecrets(BRIDGE_STORES_SECRET_NAME, BRIDGE_SSL_KEYSTORE_PASSWORD_KEY).also {
+            this.bridgeStoreSecrets = it
+        }
+    }
+
+    fun existingDeployment(): BridgeDeployment {
+        val existingDeployment = AppsV1Api(api()).readNamespacedDeployment(BRIDGE_DEPLOYMENT_NAME, namespace, null, null, null)
+        return BridgeDeployment(existingDeployment, namespace).also {
+            this.deployment = it
+        }
+    }
+
     suspend fun importNodeKeyStoreIntoBridge(
+        nodeId: String,
         nodeStoreSecrets: NodeStoresSecrets,
         initialRegistrationResult: InitialRegistrationResult
     ): BridgeStores {
+        return importNodeKeyStoresIntoBridge(listOf(NodeKeyStoreImport(nodeId, nodeStoreSecrets, initialRegistrationResult)))
+    }
+
+    //all new keystores go through a single job, nodes already listed in the share's manifest are skipped
+    suspend fun importNodeKeyStoresIntoBridge(nodes: List<NodeKeyStoreImport>): BridgeStores {
         if (bridgeStoreSecrets == null) {
             throw IllegalStateException("must generate bridge ssl secrets before importing node tls keys")
         }
-        val importNodeToBridgeJobName = "import-node-ssl-to-bridge-${RandomStringUtils.randomAlphanumeric(8).toLowerCase()}"
         val bridgeCertificatesShare = shareCreator.createDirectoryFor("bridge-certs", api)
-        val importNodeKeyStoreToBridgeJob = importNodeKeyStoreToBridgeJob(
-            importNodeToBridgeJobName,
-            nodeStoreSecrets.secretName,
-            nodeStoreSecrets.nodeKeyStorePasswordKey,
-            bridgeStoreSecrets!!.secretName,
-            bridgeStoreSecrets!!.bridgeSSLKeystorePasswordKey,
-            initialRegistrationResult.certificatesDir,
-            bridgeCertificatesShare
-        )
-
-        simpleApply.create(importNodeKeyStoreToBridgeJob, namespace, api)
-        waitForJob(importNodeKeyStoreToBridgeJob, namespace, api)
-        dumpLogsForJob(importNodeKeyStoreToBridgeJob, namespace, api)
+        val alreadyImported = readImportedNodes(bridgeCertificatesShare)
+        val nodesToImport = nodes.distinctBy { it.nodeId }.filter { it.nodeId !in alreadyImported }
+        if (nodesToImport.isEmpty()) {
+            println("all requested node keystores are already present in the bridge keystore")
+        } else {
+            val importNodeToBridgeJobName = "import-node-ssl-to-bridge-${RandomStringUtils.randomAlphanumeric(8).toLowerCase()}"
+            val importNodeKeyStoresToBridgeJob = importNodeKeyStoresToBridgeJob(
+                importNodeToBridgeJobName,
+                nodesToImport,
+                bridgeStoreSecrets!!.secretName,
+                bridgeStoreSecrets!!.bridgeSSLKeystorePasswordKey,
+                bridgeCertificatesShare,
+                images
+            )
+
+            simpleApply.create(importNodeKeyStoresToBridgeJob, namespace, api)
+            waitForJob(importNodeKeyStoresToBridgeJob, namespace, api)
+            dumpLogsForJob(importNodeKeyStoresToBridgeJob, namespace, api)
+        }
+        importedNodeKeyStores.addAll(nodes.filter { node -> importedNodeKeyStores.none { it.nodeId == node.nodeId } })
         return BridgeStores(bridgeCertificatesShare).also {
             this.bridgeStores = it
-            this.nodeStoreSecrets = nodeStoreSecrets
         }
+    }
 
+    private fun readImportedNodes(bridgeCertificatesShare: AzureFilesDirectory): Set<String> {
+        val manifest = bridgeCertificatesShare.modernClient.rootDirectoryClient.getFileClient(IMPORTED_NODES_MANIFEST_FILENAME)
+        if (!manifest.exists()) {
+            return emptySet()
+        }
+        return manifest.openInputStream().use { String(it.readBytes(), Charsets.UTF_8) }
+            .lines()
+            .map { it.trim() }
+            .filter { it.isNotEmpty() }
+            .toSet()
     }
 
     fun copyTrustStoreFromNodeRegistrationResult(initialRegistrationResult: InitialRegistrationResult) {
@@ -142,7 +183,7 @@ class BridgeSetup(
         }
     }
 
-    fun generateBridgeConfig(artemisAddress: String, floatAddress: String): String {
+    fun generateBridgeConfig(artemisAddress: String, floatAddresses: List<String>): String {
         val bridgeConfigParams = BridgeConfigParams.builder()
             .withArtemisAddress(artemisAddress)
             .withArtemisPort(ArtemisConfigParams.ARTEMIS_ACCEPTOR_PORT)
@@ -150,8 +191,7 @@ class BridgeSetup(
             .withArtemisKeyStorePassword(BridgeConfigParams.BRIDGE_ARTEMIS_KEYSTORE_PASSWORD_ENV_VAR_NAME.toEnvVar())
             .withArtemisTrustStorePath(BridgeConfigParams.BRIDGE_ARTEMIS_TRUSTSTORE_PATH)
             .withArtemisTrustStorePassword(BridgeConfigParams.BRIDGE_ARTEMIS_TRUSTSTORE_PASSWORD_ENV_VAR_NAME.toEnvVar())
-            .withFloatAddress(floatAddress)
-            .withFloatPort(FloatConfigParams.FLOAT_INTERNAL_PORT)
+            .withFloatAddresses(floatAddresses, FloatConfigParams.FLOAT_INTERNAL_PORT)
             .withExpectedFloatCertificateSubject(FloatConfigParams.FLOAT_CERTIFICATE_SUBJECT)
             .withTunnelKeyStorePath(BridgeConfigParams.BRIDGE_TUNNEL_SSL_KEYSTORE_PATH)
             .withTunnelKeyStorePassword(BridgeConfigParams.BRIDGE_TUNNEL_KEYSTORE_PASSWORD_ENV_VAR_NAME.toEnvVar())
@@ -163,6 +203,7 @@ class BridgeSetup(
             .withBridgeKeyStorePassword(BridgeConfigParams.BRIDGE_KEYSTORE_PASSWORD_ENV_VAR_NAME.toEnvVar())
             .withBridgeTrustStorePath(BridgeConfigParams.BRIDGE_TRUSTSTORE_PATH)
             .withBridgeTrustStorePassword(BridgeConfigParams.BRIDGE_TRUSTSTORE_PASSWORD_ENV_VAR_NAME.toEnvVar())
+            .withHaConnectionString(haMode.haConnectionString)
             .build()
 
         val bridgeConfig = ConfigGenerators.generateConfigFromParams(bridgeConfigParams)
@@ -175,17 +216,29 @@ class BridgeSetup(
         if (this.config == null) {
             throw IllegalStateException("must generate config before uploading")
         }
-        val bridgeConfigShare = shareCreator.createDirectoryFor("bridge-config", api)
-        val bridgeConfigFileReference =
-            bridgeConfigShare.modernClient.rootDirectoryClient.getFileClient(BridgeConfigParams.BRIDGE_CONFIG_FILENAME)
-        bridgeConfigFileReference.uploadFromByteArray(config!!.toByteArray(Charsets.UTF_8))
-        this.configShare = bridgeConfigShare
+        this.configFile = ConfigMapCreator.createConfigFile(
+            "bridge-config",
+            BridgeConfigParams.BRIDGE_CONFIG_FILENAME,
+            config!!,
+            namespace,
+            api
+        )
     }
 
-    fun deploy(): BridgeDeployment {
+    suspend fun deploy(): BridgeDeployment {
+        if (haMode is BridgeHaMode.InClusterZookeeper) {
+            val zookeeperDeployment = createZookeeperDeployment(namespace, images)
+            simpleApply.create(zookeeperDeployment, namespace, api)
+            simpleApply.create(createZookeeperService(zookeeperDeployment), namespace, api)
+            //bridges elect their leader through zookeeper, so it must be serving before they start
+            waitForRollout(zookeeperDeployment.metadata?.name!!, namespace, api)
+        }
+        //the bridge truststore is the network truststore copied from a node registration, any imported node's password opens it
+        val trustStoreSecrets = importedNodeKeyStores.firstOrNull()?.nodeStoresSecrets
+            ?: throw IllegalStateException("must import at least one node keystore before deploying the bridge")
         val bridgeDeployment = createBridgeDeployment(
             namespace,
-            configShare,
+            configFile,
             tunnelComponents?.bridgeTunnelShare!!,
             artemisComponents?.bridgeArtemisStoresShare!!,
             bridgeStores?.certificatesDir!!,
@@ -194,16 +247,22 @@ class BridgeSetup(
             artemisSecrets,
             bridgeStoreSecrets!!.secretName,
             bridgeStoreSecrets!!.bridgeSSLKeystorePasswordKey,
-            nodeStoreSecrets.secretName,
-            nodeStoreSecrets.sharedTrustStorePasswordKey
+            trustStoreSecrets.secretName,
+            trustStoreSecrets.sharedTrustStorePasswordKey,
+            images,
+            haMode
         )
         simpleApply.create(bridgeDeployment, namespace, api)
+        waitForRollout(bridgeDeployment.metadata?.name!!, namespace, api)
         return BridgeDeployment(bridgeDeployment, namespace).also {
             this.deployment = it
         }
     }
 
-
+    companion object {
+        const val BRIDGE_STORES_SECRET_NAME = "bridge-stores-secrets"
+        const val BRIDGE_SSL_KEYSTORE_PASSWORD_KEY = "bridgesslpassword"
+    }
 }
 
 class BridgeSecrets(val secretName: String, val bridgeSSLKeystorePasswordKey: String)
@@ -215,7 +274,11 @@ class BridgeTunnelComponents(val bridgeTunnelShare: AzureFilesDirectory)
 class BridgeArtemisComponents(val bridgeArtemisStoresShare: AzureFilesDirectory)
 
 class BridgeDeployment(val deployment: V1Deployment, val namespace: String) {
-    fun restart(api: () -> ApiClient) {
+
+    //bumping a pod template annotation lets the deployment strategy replace replicas one at a time, each replacement must
+    //hold an artemis or election connection for minReadySeconds before the next old replica stops, so a standby is always
+    //available to take over. a single bridge has no standby and is stopped before its replacement starts
+    suspend fun restart(api: () -> ApiClient) {
         val appsApi = AppsV1Api(api())
 
         val discoveredDeployment = appsApi.listNamespacedDeployment(
@@ -223,9 +286,13 @@ class BridgeDeployment(val deployment: V1Deployment, val namespace: String) {
             "run=${this.deployment.metadata?.name}", null, null, null, null
         ).items.firstOrNull() ?: throw IllegalStateException("Could not find existing bridge - cannot restart")
 
-        val existingEnv = discoveredDeployment.spec?.template?.spec?.containers?.first()?.env!!
-        existingEnv.removeAll { it.name == "RESTART_VAR" }
-        existingEnv.add(V1EnvVarBuilder().withName("RESTART_VAR").withValue(RandomStringUtils.randomAlphanumeric(10)).build())
+        val podTemplateMetadata = discoveredDeployment.spec?.template?.metadata
+            ?: throw IllegalStateException("bridge deployment has no pod template metadata - cannot restart")
+        if ((discoveredDeployment.spec?.replicas ?: 1) < 2) {
+            println("bridge ${discoveredDeployment.metadata?.name} has no standby, messaging will pause until the restarted bridge reconnects")
+        }
+        podTemplateMetadata.annotations = (podTemplateMetadata.annotations ?: emptyMap<String, String>()) +
+                (RESTARTED_AT_ANNOTATION to Instant.now().toString())
         appsApi.replaceNamespacedDeployment(
             discoveredDeployment.metadata?.name,
             namespace,
@@ -234,6 +301,11 @@ class BridgeDeployment(val deployment: V1Deployment, val namespace: String) {
             null,
             null
         )
+        waitForRollout(discoveredDeployment.metadata?.name!!, namespace, api)
+    }
+
+    companion object {
+        const val RESTARTED_AT_ANNOTATION = "deployment.corda.net/restartedAt"
     }
 }
 
@@ -2,6 +2,7 @@ package net.corda.deployment.node
 
 import io.kubernetes.client.openapi.models.V1Job
 import io.kubernetes.client.openapi.models.V1VolumeMountBuilder
+import net.corda.deployment.node.kubernetes.PinnedImages
 import net.corda.deployment.node.storage.AzureFilesDirectory
 import net.corda.deployments.node.config.ArtemisConfigParams
 
@@ -9,12 +10,13 @@ fun configureArtemis(
     jobName: String,
     artemisSecrets: ArtemisSecrets,
     generatedArtemisStores: AzureFilesDirectory,
-    workingDirShare: AzureFilesDirectory
+    workingDirShare: AzureFilesDirectory,
+    images: PinnedImages
 ): V1Job {
     val workingDirMountName = "azureworkingdir"
     val storesDirMountName = "storesdir"
     val workingDir = ArtemisConfigParams.ARTEMIS_BROKER_BASE_DIR
-    return baseSetupJobBuilder(jobName, listOf("configure-artemis"))
+    return baseSetupJobBuilder(jobName, listOf("configure-artemis"), images)
         .withVolumeMounts(
             V1VolumeMountBuilder()
                 .withName(workingDirMountName)
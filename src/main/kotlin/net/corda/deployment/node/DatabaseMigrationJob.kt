@@ -0,0 +1,131 @@
+package net.corda.deployment.node
+
+import io.kubernetes.client.openapi.models.V1Job
+import io.kubernetes.client.openapi.models.V1VolumeMountBuilder
+import net.corda.deployment.node.kubernetes.ConfigMapFile
+import net.corda.deployment.node.kubernetes.PinnedImages
+import net.corda.deployment.node.storage.AzureFilesDirectory
+import net.corda.deployments.node.config.AzureKeyVaultConfigParams
+import net.corda.deployments.node.config.NodeConfigParams
+
+//the setup image only carries ha-utilities, so migrations are run by the node image's own corda.jar. the job must run
+//the same image and cordapps as the node, otherwise the schema is migrated for a different set of cordapps
+fun databaseMigrationJob(
+    jobName: String,
+    nodeConfigFile: ConfigMapFile,
+    driversDir: AzureFilesDirectory,
+    cordappsDir: AzureFilesDirectory,
+    keyVaultSecrets: KeyVaultSecrets,
+    databaseSecrets: NodeDatabaseSecrets,
+    artemisSecrets: ArtemisSecrets,
+    nodeStoresSecrets: NodeStoresSecrets,
+    jarStaging: JarStaging,
+    images: PinnedImages
+): V1Job {
+    val jarsFromShares = jarStaging !is JarStaging.Baked
+    val hsmConfigDirMountName = "azurehsmcredentialsdir"
+    val nodeConfigDirMountName = "azurecordaconfigdir"
+    val nodeDriversDirMountName = "driversdir"
+    val nodeCordappsDirMountName = "cordappsdir"
+    return baseSetupJobBuilder(
+        jobName,
+        listOf(
+            "bash", "-c",
+            //the job has no pooler sidecar, so point straight at the database rather than the url in node.conf
+            "cd ${NodeConfigParams.NODE_BASE_DIR} && java " +
+                    "-Dcorda.dataSourceProperties.dataSource.url=\"\${${NodeConfigParams.NODE_DATASOURCE_URL_ENV_VAR_NAME}}\" " +
+                    "-jar /opt/corda/bin/corda.jar run-migration-scripts " +
+                    "--core-schemas --app-schemas " +
+                    "--base-directory=${NodeConfigParams.NODE_BASE_DIR} " +
+                    "--config-file=${NodeConfigParams.NODE_CONFIG_PATH} " +
+                    "--log-to-console"
+        ),
+        images,
+        jarStaging.nodeImage()
+    )
+        .withVolumeMounts(
+            listOfNotNull(
+                V1VolumeMountBuilder()
+                    .withName(hsmConfigDirMountName)
+                    .withMountPath(AzureKeyVaultConfigParams.CREDENTIALS_DIR).build(),
+                V1VolumeMountBuilder()
+                    .withName(nodeConfigDirMountName)
+                    .withMountPath(NodeConfigParams.NODE_CONFIG_DIR).build(),
+                if (jarsFromShares) V1VolumeMountBuilder()
+                    .withName(nodeDriversDirMountName)
+                    .withMountPath(NodeConfigParams.NODE_DRIVERS_DIR).build() else null,
+                if (jarsFromShares) V1VolumeMountBuilder()
+                    .withName(nodeCordappsDirMountName)
+                    .withMountPath(NodeConfigParams.NODE_CORDAPPS_DIR).build() else null
+            )
+        )
+        .withEnv(
+            licenceAcceptEnvVar(),
+            secretEnvVar(
+                AzureKeyVaultConfigParams.KEY_VAULT_CERTIFICATES_PASSWORD_ENV_VAR_NAME,
+                keyVaultSecrets.credentialPasswordsSecretName,
+                keyVaultSecrets.azKeyVaultCredentialsFilePasswordKey
+            ),
+            secretEnvVar(
+                AzureKeyVaultConfigParams.KEY_VAULT_CLIENT_ID_ENV_VAR_NAME,
+                keyVaultSecrets.credentialPasswordsSecretName,
+                keyVaultSecrets.azKeyVaultCredentialsClientIdKey
+            ),
+            secretEnvVar(
+                NodeConfigParams.NODE_DATASOURCE_URL_ENV_VAR_NAME,
+                databaseSecrets.secretName,
+                databaseSecrets.nodeDataSourceURLKey
+            ),
+            secretEnvVar(
+                NodeConfigParams.NODE_DATASOURCE_USERNAME_ENV_VAR_NAME,
+                databaseSecrets.secretName,
+                databaseSecrets.nodeDataSourceUsernameKey
+            ),
+            secretEnvVar(
+                NodeConfigParams.NODE_DATASOURCE_PASSWORD_ENV_VAR_NAME,
+                databaseSecrets.secretName,
+                databaseSecrets.nodeDatasourcePasswordKey
+            ),
+            //the node config references these, so they must resolve even though migration does not use them
+            secretEnvVar(
+                NodeConfigParams.NODE_ARTEMIS_TRUSTSTORE_PASSWORD_ENV_VAR_NAME,
+                artemisSecrets.secretName,
+                artemisSecrets.trustStorePasswordKey
+            ),
+            secretEnvVar(
+                NodeConfigParams.NODE_ARTEMIS_SSL_KEYSTORE_PASSWORD_ENV_VAR_NAME,
+                artemisSecrets.secretName,
+                artemisSecrets.keyStorePasswordKey
+            ),
+            secretEnvVar(
+                NodeConfigParams.NODE_SSL_KEYSTORE_PASSWORD_ENV_VAR_NAME,
+                nodeStoresSecrets.secretName,
+                nodeStoresSecrets.nodeKeyStorePasswordKey
+            ),
+            secretEnvVar(
+                NodeConfigParams.NODE_TRUSTSTORE_PASSWORD_ENV_VAR_NAME,
+                nodeStoresSecrets.secretName,
+                nodeStoresSecrets.sharedTrustStorePasswordKey
+            )
+        )
+        .endContainer()
+        .withVolumes(
+            listOfNotNull(
+                secretVolumeWithAll(hsmConfigDirMountName, keyVaultSecrets.credentialAndConfigFilesSecretName),
+                configMapVolume(nodeConfigDirMountName, nodeConfigFile),
+                if (jarsFromShares) azureFileMount(nodeDriversDirMountName, driversDir, true) else null,
+                if (jarsFromShares) azureFileMount(nodeCordappsDirMountName, cordappsDir, true) else null
+            )
+        )
+        .withNewSecurityContext()
+        //corda is 1000
+        .withRunAsUser(1000)
+        .withRunAsGroup(1000)
+        .withFsGroup(1000)
+        .endSecurityContext()
+        .withRestartPolicy("Never")
+        .endSpec()
+        .endTemplate()
+        .endSpec()
+        .build()
+}
@@ -2,6 +2,7 @@ package net.corda.deployment.node
 
 import com.azure.storage.file.share.ShareFileClient
 import io.kubernetes.client.openapi.ApiClient
+import net.corda.deployment.node.kubernetes.PinnedImages
 import net.corda.deployment.node.kubernetes.SecretCreator
 import net.corda.deployment.node.kubernetes.simpleApply
 import net.corda.deployment.node.storage.AzureFileShareCreator
@@ -12,7 +13,8 @@ import org.apache.commons.lang3.RandomStringUtils
 
 class FirewallSetup(
     private val namespace: String,
-    private val shareCreator: AzureFileShareCreator
+    private val shareCreator: AzureFileShareCreator,
+    private val images: PinnedImages
 ) {
 
     private var tunnelStores: GeneratedTunnelStores? = null
@@ -69,7 +71,8 @@ class FirewallSetup(
         val generateTunnelStoresJob = generateTunnelStores(
             generateTunnelStoresJobName,
             tunnelSecrets!!,
-            tunnelStoresShare
+            tunnelStoresShare,
+            images
         )
 
         simpleApply.create(generateTunnelStoresJob, namespace, api)
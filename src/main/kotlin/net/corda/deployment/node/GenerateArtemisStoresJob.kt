@@ -2,6 +2,7 @@ package net.corda.deployment.node
 
 import io.kubernetes.client.openapi.models.V1Job
 import io.kubernetes.client.openapi.models.V1VolumeMountBuilder
+import net.corda.deployment.node.kubernetes.PinnedImages
 import net.corda.deployment.node.storage.AzureFilesDirectory
 import net.corda.deployments.node.config.ArtemisConfigParams
 
@@ -10,7 +11,8 @@ fun generateArtemisStoresJob(
     artemisSecrets: ArtemisSecrets,
     artemisShare: AzureFilesDirectory,
     nodeArtemisShare: AzureFilesDirectory,
-    bridgeArtemisShare: AzureFilesDirectory
+    bridgeArtemisShare: AzureFilesDirectory,
+    images: PinnedImages
 ): V1Job {
 
     val nodeDirMountName = "nodestores"
@@ -21,7 +23,7 @@ fun generateArtemisStoresJob(
     val artemisDirPath = ArtemisConfigParams.ARTEMIS_DIR_TO_COPY_STORES_TO
 
 
-    return baseSetupJobBuilder(jobName, listOf("generate-artemis-keystores"))
+    return baseSetupJobBuilder(jobName, listOf("generate-artemis-keystores"), images)
         .withVolumeMounts(
             V1VolumeMountBuilder()
                 .withName(nodeDirMountName)
@@ -33,7 +35,7 @@ fun generateArtemisStoresJob(
                 .withName(artemisDirMountName)
                 .withMountPath(artemisDirPath).build()
         )
-        .withImagePullPolicy("Always")
+        .withImagePullPolicy("IfNotPresent")
         .withEnv(
             licenceAcceptEnvVar(),
             keyValueEnvVar("WORKING_DIR", "/tmp/artemisGeneration"),
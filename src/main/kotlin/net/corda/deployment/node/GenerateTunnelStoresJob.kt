@@ -2,17 +2,19 @@ package net.corda.deployment.node
 
 import io.kubernetes.client.openapi.models.V1Job
 import io.kubernetes.client.openapi.models.V1VolumeMountBuilder
+import net.corda.deployment.node.kubernetes.PinnedImages
 import net.corda.deployment.node.storage.AzureFilesDirectory
 import net.corda.deployments.node.config.BridgeConfigParams
 
 fun generateTunnelStores(
     jobName: String,
     firewallTunnelSecrets: FirewallTunnelSecrets,
-    workingDirShare: AzureFilesDirectory
+    workingDirShare: AzureFilesDirectory,
+    images: PinnedImages
 ): V1Job {
     val workingDirMountName = "azureworkingdir"
     val workingDir = "/tmp/tunnelGeneration"
-    return baseSetupJobBuilder(jobName, listOf("generate-tunnel-keystores"))
+    return baseSetupJobBuilder(jobName, listOf("generate-tunnel-keystores"), images)
         .withVolumeMounts(
             V1VolumeMountBuilder()
                 .withName(workingDirMountName)
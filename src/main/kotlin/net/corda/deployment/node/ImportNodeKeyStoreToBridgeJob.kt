@@ -2,66 +2,84 @@ package net.corda.deployment.node
 
 import io.kubernetes.client.openapi.models.V1Job
 import io.kubernetes.client.openapi.models.V1VolumeMountBuilder
+import net.corda.deployment.node.kubernetes.PinnedImages
 import net.corda.deployment.node.storage.AzureFilesDirectory
 import net.corda.deployments.node.config.BridgeConfigParams
 import net.corda.deployments.node.config.NodeConfigParams
 
-fun importNodeKeyStoreToBridgeJob(
+fun importNodeKeyStoresToBridgeJob(
     jobName: String,
-    nodeCertificatesSecretName: String,
-    nodeKeyStorePasswordSecretKey: String,
+    nodesToImport: List<NodeKeyStoreImport>,
     bridgeCertificatesSecretName: String,
     bridgeKeyStorePasswordSecretKey: String,
-    nodeCertificatesShare: AzureFilesDirectory,
-    workingDirShare: AzureFilesDirectory
+    workingDirShare: AzureFilesDirectory,
+    images: PinnedImages
 ): V1Job {
+    if (nodesToImport.isEmpty()) {
+        throw IllegalArgumentException("at least one node keystore is required for import")
+    }
     val workingDirPath = "/tmp/bridgeImport"
-    val nodeCertificatesPath = "/tmp/nodeCerts"
+    val nodeCertificatesBasePath = "/tmp/nodeCerts"
     val workingDirMountName = "azureworkingdir"
-    val nodeCertificatesMountName = "azurenodecerts"
-    val nodeSSLKeystorePath = "$nodeCertificatesPath/${NodeConfigParams.NODE_SSL_KEYSTORE_FILENAME}"
     val bridgeSSLKeystorePath = "$workingDirPath/${BridgeConfigParams.BRIDGE_SSL_KEYSTORE_FILENAME}"
 
-    val importJob = baseSetupJobBuilder(jobName, listOf("import-node-ssl-to-bridge"))
-        .withVolumeMounts(
-            V1VolumeMountBuilder()
-                .withName(workingDirMountName)
-                .withMountPath(workingDirPath).build(),
-            V1VolumeMountBuilder()
-                .withName(nodeCertificatesMountName)
-                .withMountPath(nodeCertificatesPath).build()
-        )
-        .withImagePullPolicy("IfNotPresent")
-        .withEnv(
-            licenceAcceptEnvVar(),
-            keyValueEnvVar("WORKING_DIR", workingDirPath),
+    //each node's certificates share is mounted under its own id, the script walks them by index
+    val nodeMountNames = nodesToImport.mapIndexed { index, _ -> "azurenodecerts$index" }
+    val nodeMounts = nodesToImport.zip(nodeMountNames).map { (node, mountName) ->
+        V1VolumeMountBuilder()
+            .withName(mountName)
+            .withMountPath("$nodeCertificatesBasePath/${node.nodeId}").build()
+    }
+    val nodeEnv = nodesToImport.mapIndexed { index, node ->
+        listOf(
+            keyValueEnvVar("NODE_ID_$index", node.nodeId),
             keyValueEnvVar(
-                "NODE_KEYSTORE_TO_IMPORT",
-                nodeSSLKeystorePath
-            ),
-            keyValueEnvVar(
-                "BRIDGE_KEYSTORE",
-                bridgeSSLKeystorePath
-            ),
-            secretEnvVar(
-                "NODE_KEYSTORE_PASSWORD",
-                nodeCertificatesSecretName,
-                nodeKeyStorePasswordSecretKey
+                "NODE_KEYSTORE_$index",
+                "$nodeCertificatesBasePath/${node.nodeId}/${NodeConfigParams.NODE_SSL_KEYSTORE_FILENAME}"
             ),
             secretEnvVar(
-                "BRIDGE_KEYSTORE_PASSWORD",
-                bridgeCertificatesSecretName,
-                bridgeKeyStorePasswordSecretKey
+                "NODE_KEYSTORE_PASSWORD_$index",
+                node.nodeStoresSecrets.secretName,
+                node.nodeStoresSecrets.nodeKeyStorePasswordKey
             )
         )
+    }.flatten()
+
+    val importJob = baseSetupJobBuilder(jobName, listOf("import-node-ssl-to-bridge"), images)
+        .withVolumeMounts(
+            listOf(
+                V1VolumeMountBuilder()
+                    .withName(workingDirMountName)
+                    .withMountPath(workingDirPath).build()
+            ) + nodeMounts
+        )
+        .withImagePullPolicy("IfNotPresent")
+        .withEnv(
+            listOf(
+                licenceAcceptEnvVar(),
+                keyValueEnvVar("WORKING_DIR", workingDirPath),
+                keyValueEnvVar("NODE_KEYSTORE_COUNT", nodesToImport.size.toString()),
+                keyValueEnvVar(
+                    "BRIDGE_KEYSTORE",
+                    bridgeSSLKeystorePath
+                ),
+                keyValueEnvVar(
+                    "IMPORTED_NODES_MANIFEST",
+                    "$workingDirPath/$IMPORTED_NODES_MANIFEST_FILENAME"
+                ),
+                secretEnvVar(
+                    "BRIDGE_KEYSTORE_PASSWORD",
+                    bridgeCertificatesSecretName,
+                    bridgeKeyStorePasswordSecretKey
+                )
+            ) + nodeEnv
+        )
         .endContainer()
         .withVolumes(
-            azureFileMount(workingDirMountName, workingDirShare, false),
-            azureFileMount(
-                nodeCertificatesMountName,
-                nodeCertificatesShare,
-                true
-            )
+            listOf(azureFileMount(workingDirMountName, workingDirShare, false)) +
+                    nodesToImport.zip(nodeMountNames).map { (node, mountName) ->
+                        azureFileMount(mountName, node.initialRegistrationResult.certificatesDir, true)
+                    }
         )
         .withRestartPolicy("Never")
         .endSpec()
@@ -69,4 +87,13 @@ fun importNodeKeyStoreToBridgeJob(
         .endSpec()
         .build()
     return importJob
-}
\ No newline at end of file
+}
+
+//one node id per line, written next to the bridge keystore once the import has been swapped in
+const val IMPORTED_NODES_MANIFEST_FILENAME = "imported-nodes.txt"
+
+data class NodeKeyStoreImport(
+    val nodeId: String,
+    val nodeStoresSecrets: NodeStoresSecrets,
+    val initialRegistrationResult: InitialRegistrationResult
+)
@@ -2,26 +2,29 @@ package net.corda.deployment.node
 
 import io.kubernetes.client.openapi.models.V1Job
 import io.kubernetes.client.openapi.models.V1VolumeMountBuilder
+import net.corda.deployment.node.kubernetes.ConfigMapFile
+import net.corda.deployment.node.kubernetes.PinnedImages
 import net.corda.deployment.node.storage.AzureFilesDirectory
 import net.corda.deployments.node.config.AzureKeyVaultConfigParams
 import net.corda.deployments.node.config.NodeConfigParams
 
 fun initialRegistrationJob(
     jobName: String,
-    nodeConfigDir: AzureFilesDirectory,
+    nodeConfigFile: ConfigMapFile,
     keyVaultSecrets: KeyVaultSecrets,
     databaseSecrets: NodeDatabaseSecrets,
     artemisSecrets: ArtemisSecrets,
     nodeStoresSecrets: NodeStoresSecrets,
     initialRegistrationDir: AzureFilesDirectory,
     networkParamsDir: AzureFilesDirectory,
-    trustRootConfig: TrustRootConfig
+    trustRootConfig: TrustRootConfig,
+    images: PinnedImages
 ): V1Job {
     val hsmConfigDirMountName = "azurehsmcredentialsdir"
     val nodeConfigDirMountName = "azurecordaconfigdir"
     val certificatesOutputDir = "azurecordacertificatesdir"
     val networkFolderMountName = "networkdir"
-    return baseSetupJobBuilder(jobName, listOf("perform-registration"))
+    return baseSetupJobBuilder(jobName, listOf("perform-registration"), images)
         .withVolumeMounts(
             V1VolumeMountBuilder()
                 .withName(hsmConfigDirMountName)
@@ -116,11 +119,7 @@ fun initialRegistrationJob(
         .endContainer()
         .withVolumes(
             secretVolumeWithAll(hsmConfigDirMountName, keyVaultSecrets.credentialAndConfigFilesSecretName),
-            azureFileMount(
-                nodeConfigDirMountName,
-                nodeConfigDir,
-                true
-            ),
+            configMapVolume(nodeConfigDirMountName, nodeConfigFile),
             azureFileMount(
                 certificatesOutputDir,
                 initialRegistrationDir,
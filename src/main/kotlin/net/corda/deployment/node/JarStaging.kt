@@ -0,0 +1,90 @@
+package net.corda.deployment.node
+
+import io.kubernetes.client.custom.Quantity
+import io.kubernetes.client.openapi.models.V1Container
+import io.kubernetes.client.openapi.models.V1ContainerBuilder
+import io.kubernetes.client.openapi.models.V1Volume
+import io.kubernetes.client.openapi.models.V1VolumeBuilder
+import io.kubernetes.client.openapi.models.V1VolumeMountBuilder
+import net.corda.deployment.node.kubernetes.PinnedImages
+import net.corda.deployment.node.storage.AzureFilesDirectory
+
+sealed class JarStaging {
+
+    //cordapps and drivers are class loaded straight from the shares
+    object Direct : JarStaging()
+
+    //an init container copies the jars onto pod local storage before corda starts, a memory backed
+    //directory counts towards the pod's memory usage so the size limit must fit within the node's allowance
+    class Local(
+        val memoryBacked: Boolean = false,
+        val sizeLimit: Quantity = Quantity("2Gi")
+    ) : JarStaging()
+
+    //the jars are layered into a node image built by the buildNodeImage task, nothing is mounted over them
+    class Baked(val image: String) : JarStaging()
+
+    fun nodeImage(): String {
+        return if (this is Baked) image else NODE_IMAGE
+    }
+}
+
+class StagedDirectory(
+    val share: AzureFilesDirectory,
+    val mountName: String,
+    val targetPath: String
+) {
+    val shareMountName: String
+        get() = "$mountName-share"
+}
+
+private const val STAGING_SOURCE_DIR = "/tmp/staging"
+
+//the node keeps mounting mountName at targetPath, with staging that name refers to a local directory instead of the share
+fun jarVolumes(directories: List<StagedDirectory>, staging: JarStaging): List<V1Volume> {
+    return when (staging) {
+        is JarStaging.Direct -> directories.map { it.share.toK8sMount(it.mountName, true) }
+        is JarStaging.Baked -> emptyList()
+        is JarStaging.Local -> directories.flatMap {
+            listOf(
+                it.share.toK8sMount(it.shareMountName, true),
+                V1VolumeBuilder()
+                    .withName(it.mountName)
+                    .withNewEmptyDir()
+                    .withMedium(if (staging.memoryBacked) "Memory" else null)
+                    .withSizeLimit(staging.sizeLimit)
+                    .endEmptyDir()
+                    .build()
+            )
+        }
+    }
+}
+
+fun jarStagingInitContainer(directories: List<StagedDirectory>, images: PinnedImages): V1Container {
+    val sourceMounts = directories.map {
+        V1VolumeMountBuilder()
+            .withName(it.shareMountName)
+            .withMountPath("$STAGING_SOURCE_DIR${it.targetPath}")
+            .withReadOnly(true)
+            .build()
+    }
+    val targetMounts = directories.map {
+        V1VolumeMountBuilder()
+            .withName(it.mountName)
+            .withMountPath(it.targetPath)
+            .build()
+    }
+    return V1ContainerBuilder()
+        .withName("stage-jars")
+        .withImage(images.pinned(SETUP_IMAGE))
+        .withImagePullPolicy("IfNotPresent")
+        .withCommand("stage-node-jars")
+        .withEnv(
+            keyValueEnvVar("STAGING_SOURCE_DIR", STAGING_SOURCE_DIR),
+            keyValueEnvVar("STAGED_DIRS", directories.joinToString(" ") { it.targetPath })
+        )
+        //the script writes its timings to the termination message so they show in the pod status
+        .withTerminationMessagePolicy("FallbackToLogsOnError")
+        .withVolumeMounts(sourceMounts + targetMounts)
+        .build()
+}
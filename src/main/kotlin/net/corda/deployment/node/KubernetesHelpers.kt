@@ -8,12 +8,19 @@ import com.github.michaelbull.retry.retry
 import com.google.gson.reflect.TypeToken
 import io.kubernetes.client.PodLogs
 import io.kubernetes.client.openapi.ApiClient
+import io.kubernetes.client.openapi.apis.AppsV1Api
 import io.kubernetes.client.openapi.apis.BatchV1Api
 import io.kubernetes.client.openapi.apis.CoreV1Api
 import io.kubernetes.client.openapi.models.*
 import io.kubernetes.client.util.Watch
+import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.delay
+import kotlinx.coroutines.withContext
+import net.corda.deployment.node.kubernetes.ConfigMapFile
+import net.corda.deployment.node.kubernetes.PinnedImages
+import net.corda.deployment.node.kubernetes.WorkloadPlacement
 import net.corda.deployment.node.storage.AzureFilesDirectory
+import net.corda.deployment.node.storage.claimName
 import okhttp3.OkHttpClient
 import org.apache.commons.io.IOUtils
 import java.time.Duration
@@ -25,14 +32,14 @@ import kotlin.coroutines.coroutineContext
 import kotlin.coroutines.suspendCoroutine
 
 
+//shares are consumed through their statically bound claims so the tuned mount options on the volume apply
 fun AzureFilesDirectory.toK8sMount(mountName: String, readOnly: Boolean): V1Volume {
     return V1VolumeBuilder()
         .withName(mountName)
-        .withNewAzureFile()
-        .withShareName(this.legacyClient.name)
-        .withSecretName(this.azureFileSecrets.secretName)
+        .withNewPersistentVolumeClaim()
+        .withClaimName(this.claimName(readOnly))
         .withReadOnly(readOnly)
-        .endAzureFile()
+        .endPersistentVolumeClaim()
         .build()
 }
 
@@ -40,14 +47,19 @@ fun azureFileMount(
     mountName: String,
     share: AzureFilesDirectory,
     readOnly: Boolean
+): V1Volume {
+    return share.toK8sMount(mountName, readOnly)
+}
+
+fun configMapVolume(
+    mountName: String,
+    configFile: ConfigMapFile
 ): V1Volume {
     return V1VolumeBuilder()
         .withName(mountName)
-        .withNewAzureFile()
-        .withShareName(share.legacyClient.name)
-        .withSecretName(share.azureFileSecrets.secretName)
-        .withReadOnly(readOnly)
-        .endAzureFile()
+        .withNewConfigMap()
+        .withName(configFile.configMapName)
+        .endConfigMap()
         .build()
 }
 
@@ -78,9 +90,13 @@ fun secretEnvVar(
         .build()
 }
 
+const val SETUP_IMAGE = "corda/enterprise-setup-4.5.1:latest"
+
 fun baseSetupJobBuilder(
     jobName: String,
-    command: List<String>
+    command: List<String>,
+    images: PinnedImages,
+    image: String = SETUP_IMAGE
 ): V1PodSpecFluent.ContainersNested<V1PodTemplateSpecFluent.SpecNested<V1JobSpecFluent.TemplateNested<V1JobFluent.SpecNested<V1JobBuilder>>>> {
     return V1JobBuilder()
         .withApiVersion("batch/v1")
@@ -92,9 +108,11 @@ fun baseSetupJobBuilder(
         .withTtlSecondsAfterFinished(100)
         .withNewTemplate()
         .withNewSpec()
+        .withNodeSelector(WorkloadPlacement.SETUP.nodeSelector)
+        .withTolerations(WorkloadPlacement.SETUP.tolerations())
         .addNewContainer()
         .withName(jobName)
-        .withImage("corda/enterprise-setup-4.5.1:latest")
+        .withImage(images.pinned(image))
         .withImagePullPolicy("IfNotPresent")
         .withCommand(command)
 }
@@ -142,6 +160,60 @@ suspend fun waitForJob(
     }
 }
 
+//the watch delivers every status change as it happens, a replica only counts as available once its readiness probe passes
+suspend fun waitForRollout(
+    deploymentName: String,
+    namespace: String,
+    clientSource: () -> ApiClient,
+    duration: Duration = Duration.ofMinutes(10)
+): V1Deployment {
+    val started = Instant.now()
+    val deadline = started.plus(duration)
+    val client = clientSource()
+    client.httpClient = client.httpClient.newBuilder().readTimeout(0, TimeUnit.SECONDS).build()
+    val api = AppsV1Api(client)
+    while (Instant.now().isBefore(deadline)) {
+        val watchSeconds = Math.toIntExact(Duration.between(Instant.now(), deadline).seconds.coerceAtLeast(1))
+        val watch = Watch.createWatch<V1Deployment>(
+            client,
+            api.listNamespacedDeploymentCall(
+                namespace, null, null, null, "metadata.name=$deploymentName", null, null, null, watchSeconds, true, null
+            ),
+            object : TypeToken<Watch.Response<V1Deployment>>() {}.type
+        )
+        //the server ends the watch after watchSeconds, in which case it is re-established until the deadline
+        val rolledOutDeployment = withContext(Dispatchers.IO) {
+            watch.use { events ->
+                events.asSequence()
+                    .filter { it.type == "ADDED" || it.type == "MODIFIED" }
+                    .map { it.`object` }
+                    .firstOrNull { deployment ->
+                        isRolledOut(deployment).also { rolledOut ->
+                            if (!rolledOut) {
+                                val desiredReplicas = deployment.spec?.replicas ?: 1
+                                println("deployment $deploymentName has not finished rolling out (${deployment.status?.updatedReplicas ?: 0}/$desiredReplicas updated, ${deployment.status?.availableReplicas ?: 0}/$desiredReplicas available)")
+                            }
+                        }
+                    }
+            }
+        }
+        if (rolledOutDeployment != null) {
+            println("deployment $deploymentName ready in ${Duration.between(started, Instant.now()).toMillis()}ms")
+            return rolledOutDeployment
+        }
+    }
+    throw TimeoutException("deployment $deploymentName did not finish rolling out within $duration")
+}
+
+private fun isRolledOut(deployment: V1Deployment): Boolean {
+    val desiredReplicas = deployment.spec?.replicas ?: 1
+    val status = deployment.status
+    return (status?.observedGeneration ?: 0) >= (deployment.metadata?.generation ?: 0)
+            && status?.updatedReplicas == desiredReplicas
+            && status.availableReplicas == desiredReplicas
+            && (status.unavailableReplicas ?: 0) == 0
+}
+
 suspend fun dumpLogsForJob(job: V1Job, namespace: String, clientSource: () -> ApiClient) {
     val client = clientSource()
     retry(limitAttempts(10) + constantDelay(delayMillis = 500L)) {
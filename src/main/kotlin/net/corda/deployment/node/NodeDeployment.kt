@@ -1,28 +1,44 @@
 package net.corda.deployment.node
 
+import io.kubernetes.client.custom.IntOrString
 import io.kubernetes.client.custom.Quantity
+import io.kubernetes.client.openapi.models.V1Container
 import io.kubernetes.client.openapi.models.V1ContainerPortBuilder
 import io.kubernetes.client.openapi.models.V1Deployment
 import io.kubernetes.client.openapi.models.V1DeploymentBuilder
 import io.kubernetes.client.openapi.models.V1VolumeMountBuilder
+import net.corda.deployment.node.kubernetes.ARTEMIS_POD_LABELS
+import net.corda.deployment.node.kubernetes.ConfigMapFile
+import net.corda.deployment.node.kubernetes.PinnedImages
+import net.corda.deployment.node.kubernetes.WorkloadPlacement
+import net.corda.deployment.node.kubernetes.podAffinity
 import net.corda.deployment.node.storage.AzureFilesDirectory
 import net.corda.deployments.node.config.AzureKeyVaultConfigParams
 import net.corda.deployments.node.config.NodeConfigParams
+import net.corda.deployments.node.config.NodeLoggingConfigParams
 
 const val NODE_RPC_PORT_NAME = "node-rpc"
+const val NODE_LOGGING_CONFIG_HASH_ANNOTATION = "corda.net/logging-config-hash"
+const val NODE_IMAGE = "corda/corda-enterprise-java-zulu1.8-4.6-snapshot:latest"
 
 fun createNodeDeployment(
     namespace: String,
     nodeId: String,
     artemisDirShare: AzureFilesDirectory,
     certificatesDirShare: AzureFilesDirectory,
-    configDirShare: AzureFilesDirectory,
+    configFile: ConfigMapFile,
+    loggingConfigFile: ConfigMapFile,
     driversShareDir: AzureFilesDirectory,
     cordappsDirShare: AzureFilesDirectory,
     artemisSecrets: ArtemisSecrets,
     nodeStoresSecrets: NodeStoresSecrets,
     keyVaultSecrets: KeyVaultSecrets,
-    databaseSecrets: NodeDatabaseSecrets
+    databaseSecrets: NodeDatabaseSecrets,
+    resources: NodeResourceProfile,
+    images: PinnedImages,
+    sidecars: List<V1Container> = emptyList(),
+    jarStaging: JarStaging = JarStaging.Direct,
+    logging: NodeLogging = NodeLogging()
 ): V1Deployment {
     val hsmConfigDirMountName = "azurehsmcredentialsdir"
     val nodeConfigDirMountName = "azurecordaconfigdir"
@@ -30,6 +46,14 @@ fun createNodeDeployment(
     val artemisDirMountName = "artemisstoresdir"
     val nodeDriversDirMountName = "driversdir"
     val nodeCordappsDirMountName = "cordappsdir"
+    val nodeLoggingConfigDirMountName = "loggingconfigdir"
+    val nodeLogsDirMountName = "nodelogsdir"
+    val logVolume = logging.logVolume(nodeLogsDirMountName, nodeId)
+    val jarDirectories = listOf(
+        StagedDirectory(driversShareDir, nodeDriversDirMountName, NodeConfigParams.NODE_DRIVERS_DIR),
+        StagedDirectory(cordappsDirShare, nodeCordappsDirMountName, NodeConfigParams.NODE_CORDAPPS_DIR)
+    )
+    val initContainers = if (jarStaging is JarStaging.Local) listOf(jarStagingInitContainer(jarDirectories, images)) else emptyList()
 
     return V1DeploymentBuilder()
         .withKind("Deployment")
@@ -44,21 +68,31 @@ fun createNodeDeployment(
         .withMatchLabels(listOf("run" to "node-$nodeId").toMap())
         .endSelector()
         .withReplicas(1)
+        //two pods with the same node identity and vault must never run at once, and a log disk can only attach to one of them
+        .withNewStrategy()
+        .withType("Recreate")
+        .endStrategy()
         .withNewTemplate()
         .withNewMetadata()
         .withLabels(listOf("run" to "node-$nodeId").toMap())
+        .withAnnotations(configFile.podAnnotations + (NODE_LOGGING_CONFIG_HASH_ANNOTATION to loggingConfigFile.contentHash))
         .endMetadata()
         .withNewSpec()
+        .withNodeSelector(WorkloadPlacement.NODES.nodeSelector)
+        .withTolerations(WorkloadPlacement.NODES.tolerations())
+        .withAffinity(podAffinity(colocateWith = ARTEMIS_POD_LABELS))
+        .withInitContainers(initContainers)
         .addNewContainer()
         .withName("node-$nodeId")
-        .withImage("corda/corda-enterprise-java-zulu1.8-4.6-snapshot:latest")
+        .withImage(images.pinned(jarStaging.nodeImage()))
         .withImagePullPolicy("IfNotPresent")
         .withCommand("run-corda")
         .withEnv(
-            keyValueEnvVar("CORDA_ARGS", "--verbose"),
+            keyValueEnvVar("CORDA_ARGS", logging.cordaArgs),
             keyValueEnvVar(
                 "JVM_ARGS",
-                "-Xms512M -XX:MinHeapFreeRatio=20 -XX:MaxHeapFreeRatio=40 -XX:GCTimeRatio=4 -XX:AdaptiveSizePolicyWeight=80"
+                "-Xms512M -Xmx${resources.heapMegaBytes}M -XX:MinHeapFreeRatio=20 -XX:MaxHeapFreeRatio=40 -XX:GCTimeRatio=4 -XX:AdaptiveSizePolicyWeight=80" +
+                        " -Dlog4j.configurationFile=${NodeLoggingConfigParams.NODE_LOGGING_CONFIG_PATH}"
             ),
             licenceAcceptEnvVar(),
             secretEnvVar(
@@ -111,14 +145,38 @@ fun createNodeDeployment(
             V1ContainerPortBuilder().withName(NODE_RPC_PORT_NAME).withContainerPort(
                 NodeConfigParams.NODE_RPC_PORT
             ).build()
-        ).withNewResources()
+        )
+        //rpc is the last thing a node opens, so a listening rpc port means the node has finished starting
+        .withNewReadinessProbe()
+        .withNewTcpSocket()
+        .withPort(IntOrString(NODE_RPC_PORT_NAME))
+        .endTcpSocket()
+        .withInitialDelaySeconds(30)
+        .withPeriodSeconds(10)
+        .endReadinessProbe()
+        //1.16 has no startup probes, so liveness only starts once a cold node would have had time to open rpc
+        .withNewLivenessProbe()
+        .withNewTcpSocket()
+        .withPort(IntOrString(NODE_RPC_PORT_NAME))
+        .endTcpSocket()
+        .withInitialDelaySeconds(300)
+        .withPeriodSeconds(20)
+        .withTimeoutSeconds(5)
+        .withFailureThreshold(3)
+        .endLivenessProbe()
+        .withNewResources()
         .withRequests(
             listOf(
-                "memory" to Quantity("2048"), "cpu" to Quantity(
-                    "1.5"
+                "memory" to Quantity("${resources.memoryMegaBytes}Mi"), "cpu" to Quantity(
+                    resources.cpuCores.toString()
                 )
             ).toMap()
         )
+        .withLimits(
+            listOf(
+                "memory" to Quantity("${resources.memoryMegaBytes}Mi")
+            ).toMap()
+        )
         .endResources()
         .withVolumeMounts(
             V1VolumeMountBuilder()
@@ -134,32 +192,38 @@ fun createNodeDeployment(
                 .withName(artemisDirMountName)
                 .withMountPath(NodeConfigParams.NODE_ARTEMIS_STORES_DIR).build(),
             V1VolumeMountBuilder()
-                .withName(nodeDriversDirMountName)
-                .withMountPath(NodeConfigParams.NODE_DRIVERS_DIR).build(),
-            V1VolumeMountBuilder()
-                .withName(nodeCordappsDirMountName)
-                .withMountPath(NodeConfigParams.NODE_CORDAPPS_DIR).build()
+                .withName(nodeLoggingConfigDirMountName)
+                .withMountPath(NodeLoggingConfigParams.NODE_LOGGING_CONFIG_DIR).build()
         )
+        //traces are written under the logs directory, so they land on the same volume
+        .addAllToVolumeMounts(listOfNotNull(logVolume?.let {
+            V1VolumeMountBuilder()
+                .withName(nodeLogsDirMountName)
+                .withMountPath(NodeLoggingConfigParams.NODE_LOGS_DIR).build()
+        }))
+        .addAllToVolumeMounts(if (jarStaging is JarStaging.Baked) emptyList() else jarDirectories.map {
+            V1VolumeMountBuilder()
+                .withName(it.mountName)
+                .withMountPath(it.targetPath).build()
+        })
         .endContainer()
+        .addAllToContainers(sidecars)
         .withVolumes(
-            secretVolumeWithAll(hsmConfigDirMountName, keyVaultSecrets.credentialAndConfigFilesSecretName),
-            azureFileMount(
-                nodeConfigDirMountName,
-                configDirShare,
-                true
-            ),
-            azureFileMount(
-                nodeCertificatesDirMountName,
-                certificatesDirShare,
-                true
-            ),
-            azureFileMount(
-                artemisDirMountName,
-                artemisDirShare,
-                true
-            ),
-            azureFileMount(nodeDriversDirMountName, driversShareDir, true),
-            cordappsDirShare.toK8sMount(nodeCordappsDirMountName, false)
+            listOf(
+                secretVolumeWithAll(hsmConfigDirMountName, keyVaultSecrets.credentialAndConfigFilesSecretName),
+                configMapVolume(nodeConfigDirMountName, configFile),
+                configMapVolume(nodeLoggingConfigDirMountName, loggingConfigFile),
+                azureFileMount(
+                    nodeCertificatesDirMountName,
+                    certificatesDirShare,
+                    true
+                ),
+                azureFileMount(
+                    artemisDirMountName,
+                    artemisDirShare,
+                    true
+                )
+            ) + jarVolumes(jarDirectories, jarStaging) + listOfNotNull(logVolume)
         )
         .withNewSecurityContext()
         //corda is 1000
@@ -0,0 +1,126 @@
+package net.corda.deployment.node
+
+import io.kubernetes.client.custom.Quantity
+import io.kubernetes.client.openapi.ApiClient
+import io.kubernetes.client.openapi.ApiException
+import io.kubernetes.client.openapi.apis.CoreV1Api
+import io.kubernetes.client.openapi.models.V1PersistentVolumeClaimBuilder
+import io.kubernetes.client.openapi.models.V1Volume
+import io.kubernetes.client.openapi.models.V1VolumeBuilder
+import net.corda.deployment.node.config.ConfigGenerators
+import net.corda.deployments.node.config.NodeLoggingConfigParams
+
+sealed class NodeLogVolume {
+
+    //logs and traces share the os disk with the image layers and everything else the kubelet writes
+    object ContainerLayer : NodeLogVolume()
+
+    //pod local scratch space, it goes with the pod and the size limit is enforced by eviction
+    class Local(val sizeLimit: Quantity = Quantity("10Gi")) : NodeLogVolume()
+
+    //a premium managed disk per node, logs survive the pod being rescheduled and never compete with the os disk.
+    //premium iops scale with size, anything below 128Gi (P10) is slower than the os disk it is meant to offload
+    class PremiumDisk(val size: Quantity = Quantity("128Gi")) : NodeLogVolume() {
+        fun claimName(nodeId: String): String {
+            return "node-logs-$nodeId"
+        }
+    }
+}
+
+data class NodeLogging(
+    val verbose: Boolean = false,
+    val level: String = "INFO",
+    val volume: NodeLogVolume = NodeLogVolume.Local(),
+    val maxFileSizeMegaBytes: Int = 100,
+    val maxRolledFiles: Int = 20,
+    val asyncQueueSize: Int = 8192,
+    val traceAllowanceMegaBytes: Int = 2048
+) {
+    init {
+        if (maxFileSizeMegaBytes < 1 || maxRolledFiles < 1 || asyncQueueSize < 1 || traceAllowanceMegaBytes < 0) {
+            throw IllegalArgumentException(
+                "log file size, rolled file count and async queue size must all be positive and the trace allowance must not be negative"
+            )
+        }
+        //the live file, every archive and the traces the node writes under logs/traces must all fit. a local volume
+        //that fills gets the pod evicted and a full disk stops the node logging
+        val capacity = when (volume) {
+            is NodeLogVolume.ContainerLayer -> null
+            is NodeLogVolume.Local -> volume.sizeLimit
+            is NodeLogVolume.PremiumDisk -> volume.size
+        }
+        if (capacity != null) {
+            val retainedBytes = ((maxRolledFiles + 1).toLong() * maxFileSizeMegaBytes + traceAllowanceMegaBytes) * 1024 * 1024
+            if (retainedBytes > capacity.number.toLong()) {
+                throw IllegalArgumentException(
+                    "retaining ${maxRolledFiles + 1} log files of ${maxFileSizeMegaBytes}MB and ${traceAllowanceMegaBytes}MB of traces " +
+                            "exceeds the log volume size of ${capacity.toSuffixedString()}"
+                )
+            }
+        }
+    }
+
+    //--verbose copies every log line to the console, which the kubelet then writes to the os disk a second time
+    val cordaArgs: String
+        get() = if (verbose) "--verbose --logging-level=$level" else "--logging-level=$level"
+
+    fun generateConfig(): String {
+        return ConfigGenerators.generateConfigFromParams(
+            NodeLoggingConfigParams.builder()
+                .withLogDirectory(NodeLoggingConfigParams.NODE_LOGS_DIR)
+                .withLogLevel(level)
+                .withMaxFileSizeMegaBytes(maxFileSizeMegaBytes)
+                .withMaxRolledFiles(maxRolledFiles)
+                .withAsyncQueueSize(asyncQueueSize)
+                .build()
+        )
+    }
+
+    fun logVolume(mountName: String, nodeId: String): V1Volume? {
+        return when (volume) {
+            is NodeLogVolume.ContainerLayer -> null
+            is NodeLogVolume.Local -> V1VolumeBuilder()
+                .withName(mountName)
+                .withNewEmptyDir()
+                .withSizeLimit(volume.sizeLimit)
+                .endEmptyDir()
+                .build()
+            is NodeLogVolume.PremiumDisk -> V1VolumeBuilder()
+                .withName(mountName)
+                .withNewPersistentVolumeClaim()
+                .withClaimName(volume.claimName(nodeId))
+                .endPersistentVolumeClaim()
+                .build()
+        }
+    }
+
+    //the claim outlives any one deployment of the node, so an existing claim is reused
+    fun createLogClaim(nodeId: String, namespace: String, api: () -> ApiClient) {
+        if (volume !is NodeLogVolume.PremiumDisk) {
+            return
+        }
+        val claim = V1PersistentVolumeClaimBuilder()
+            .withApiVersion("v1")
+            .withKind("PersistentVolumeClaim")
+            .withNewMetadata()
+            .withName(volume.claimName(nodeId))
+            .withNamespace(namespace)
+            .endMetadata()
+            .withNewSpec()
+            .withAccessModes("ReadWriteOnce")
+            .withStorageClassName("managed-premium")
+            .withNewResources()
+            .withRequests(mapOf("storage" to volume.size))
+            .endResources()
+            .endSpec()
+            .build()
+        try {
+            CoreV1Api(api()).createNamespacedPersistentVolumeClaim(namespace, claim, null, null, null)
+        } catch (e: ApiException) {
+            if (e.code != 409) {
+                println(e.responseBody)
+                throw e
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package net.corda.deployment.node
+
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
+import net.corda.deployment.node.infrastructure.AzureInfrastructureDeployer
+import net.corda.deployment.node.infrastructure.DeployedArtemis
+import java.io.File
+
+class NodeOnboarding(
+    private val infrastructure: AzureInfrastructureDeployer.AzureInfrastructure,
+    private val namespace: String,
+    private val deployedArtemis: DeployedArtemis,
+    private val bridgeSetup: BridgeSetup,
+    private val parallelism: Int,
+    private val jarStaging: JarStaging = JarStaging.Local(),
+    private val logging: NodeLogging = NodeLogging()
+) {
+
+    init {
+        if (parallelism < 1) {
+            throw IllegalArgumentException("parallelism must be at least 1")
+        }
+    }
+
+    suspend fun onboard(
+        x500Names: List<String>,
+        email: String,
+        doormanURL: String,
+        networkMapURL: String,
+        trustRootConfig: TrustRootConfig,
+        cordapps: List<File>,
+        gradleCordapps: List<File>
+    ): List<OnboardedNode> {
+        bridgeSetup.useExistingBridgeStoreSecrets()
+        val permits = Semaphore(parallelism)
+        val preparedNodes = coroutineScope {
+            x500Names.map { x500Name ->
+                //azure file and gradle operations block, so each node pipeline runs on the io dispatcher
+                async(Dispatchers.IO) {
+                    permits.withPermit {
+                        prepareNode(x500Name, email, doormanURL, networkMapURL, trustRootConfig, cordapps, gradleCordapps)
+                    }
+                }
+            }.awaitAll()
+        }
+
+        //one import job and one bridge restart regardless of how many nodes were added
+        bridgeSetup.importNodeKeyStoresIntoBridge(preparedNodes.map {
+            NodeKeyStoreImport(it.nodeSetup.nodeId, it.nodeStoresSecrets, it.initialRegistrationResult)
+        })
+        //each deploy waits for its node to open rpc, the nodes start independently so they are waited on together
+        coroutineScope {
+            preparedNodes.map { async { it.nodeSetup.deploy() } }.awaitAll()
+        }
+        bridgeSetup.existingDeployment().restart(infrastructure.clusters.nonDmzApiSource())
+        return preparedNodes
+    }
+
+    private suspend fun prepareNode(
+        x500Name: String,
+        email: String,
+        doormanURL: String,
+        networkMapURL: String,
+        trustRootConfig: TrustRootConfig,
+        cordapps: List<File>,
+        gradleCordapps: List<File>
+    ): OnboardedNode = coroutineScope {
+        println("onboarding node: $x500Name")
+        val nodeInfrastructure = infrastructure.nodeSpecificInfrastructure(x500Name.shortSha())
+        val (nodeSetup, keyVaultSetup) = nodeInfrastructure.provisionNode(namespace, jarStaging = jarStaging, logging = logging)
+        keyVaultSetup.generateKeyVaultCryptoServiceConfig()
+        val vaultSecrets = keyVaultSetup.createKeyVaultSecrets()
+
+        nodeSetup.generateNodeConfig(
+            x500Name,
+            email,
+            infrastructure.p2pAddress(),
+            deployedArtemis.deployment.serviceName,
+            doormanURL,
+            networkMapURL,
+            "u",
+            "p"
+        )
+        nodeSetup.uploadNodeConfig()
+        nodeSetup.createNodeDatabaseSecrets()
+        val nodeStoresSecrets = nodeSetup.createNodeKeyStoreSecrets()
+        nodeSetup.copyToDriversDir()
+        nodeSetup.copyToCordappsDir(cordapps, gradleCordapps)
+        val databaseMigration = async { nodeSetup.runDatabaseMigration(vaultSecrets, deployedArtemis.secrets) }
+        val initialRegistrationResult = nodeSetup.performInitialRegistration(vaultSecrets, deployedArtemis.secrets, trustRootConfig)
+
+        nodeSetup.copyArtemisStores(deployedArtemis.nodeStores)
+        nodeSetup.createArtemisSecrets(deployedArtemis.secrets)
+        nodeSetup.createKeyVaultSecrets(vaultSecrets)
+        databaseMigration.await()
+        OnboardedNode(x500Name, nodeSetup, nodeStoresSecrets, initialRegistrationResult)
+    }
+}
+
+data class OnboardedNode(
+    val x500Name: String,
+    val nodeSetup: NodeSetup,
+    val nodeStoresSecrets: NodeStoresSecrets,
+    val initialRegistrationResult: InitialRegistrationResult
+)
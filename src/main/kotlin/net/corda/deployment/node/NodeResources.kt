@@ -0,0 +1,58 @@
+package net.corda.deployment.node
+
+import net.corda.deployment.node.database.DatabaseConfigParams
+import kotlin.math.ceil
+import kotlin.math.max
+import kotlin.math.min
+
+data class NodeResourceProfile(
+    val cpuCores: Double,
+    val memoryMegaBytes: Int
+) {
+    init {
+        if (cpuCores <= 0 || memoryMegaBytes < 1024) {
+            throw IllegalArgumentException("node requires a positive cpu allocation and at least 1024MB of memory")
+        }
+    }
+
+    //leave room for metaspace, thread stacks and direct buffers used by the artemis client
+    val heapMegaBytes: Int
+        get() = (memoryMegaBytes * 0.75).toInt()
+
+    companion object {
+        val SMALL = NodeResourceProfile(1.5, 2048)
+        val MEDIUM = NodeResourceProfile(4.0, 8192)
+        val LARGE = NodeResourceProfile(8.0, 16384)
+    }
+}
+
+data class NodeTuning(
+    val flowThreadPoolSize: Int,
+    val rpcThreadPoolSize: Int,
+    val dataSourceMaxPoolSize: Int,
+    val transactionCacheSizeMegaBytes: Int,
+    val attachmentContentCacheSizeMegaBytes: Int,
+    val maximumMessagingBatchSize: Int,
+    val p2pConfirmationWindowSize: Int
+) {
+    companion object {
+        //connections used outside of flow and rpc threads (scheduler, network map updates, vault observers)
+        private const val BACKGROUND_CONNECTIONS = 2
+
+        fun forResources(resources: NodeResourceProfile, dbParams: DatabaseConfigParams): NodeTuning {
+            //flows spend much of their time waiting on the database and counterparties, so oversubscribe the cores
+            val flowThreads = max(2, ceil(resources.cpuCores * 2).toInt())
+            val rpcThreads = max(1, ceil(resources.cpuCores).toInt())
+            val poolSize = min(flowThreads + rpcThreads + BACKGROUND_CONNECTIONS, dbParams.maxConnections)
+            return NodeTuning(
+                flowThreadPoolSize = flowThreads,
+                rpcThreadPoolSize = rpcThreads,
+                dataSourceMaxPoolSize = poolSize,
+                transactionCacheSizeMegaBytes = max(8, resources.heapMegaBytes / 16),
+                attachmentContentCacheSizeMegaBytes = max(10, resources.heapMegaBytes / 32),
+                maximumMessagingBatchSize = max(256, flowThreads * 32),
+                p2pConfirmationWindowSize = max(1, ceil(resources.cpuCores).toInt()) * 1024 * 1024
+            )
+        }
+    }
+}
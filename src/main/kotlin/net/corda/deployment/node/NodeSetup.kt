@@ -6,17 +6,21 @@ import io.kubernetes.client.openapi.ApiClient
 import io.kubernetes.client.util.Yaml
 import net.corda.deployment.node.config.ConfigGenerators
 import net.corda.deployment.node.database.DatabaseConfigParams
+import net.corda.deployment.node.kubernetes.ConfigMapCreator
+import net.corda.deployment.node.kubernetes.ConfigMapFile
+import net.corda.deployment.node.kubernetes.PinnedImages
 import net.corda.deployment.node.kubernetes.SecretCreator
 import net.corda.deployment.node.kubernetes.simpleApply
 import net.corda.deployment.node.storage.AzureFileShareCreator
 import net.corda.deployment.node.storage.AzureFilesDirectory
 import net.corda.deployment.node.storage.enforceExistence
-import net.corda.deployment.node.storage.uploadFromByteArray
 import net.corda.deployments.node.config.ArtemisConfigParams
 import net.corda.deployments.node.config.NodeConfigParams
+import net.corda.deployments.node.config.NodeLoggingConfigParams
 import org.apache.commons.lang3.RandomStringUtils
 import java.io.File
 import java.nio.file.Files
+import java.time.Duration
 
 class NodeSetup(
     val shareCreator: AzureFileShareCreator,
@@ -24,7 +28,12 @@ class NodeSetup(
     val namespace: String,
     val api: () -> ApiClient,
     val nodeId: String,
-    val hsm: HsmType
+    val hsm: HsmType,
+    val images: PinnedImages,
+    val resources: NodeResourceProfile = NodeResourceProfile.SMALL,
+    val migrateSchemaBeforeStartup: Boolean = true,
+    val jarStaging: JarStaging = JarStaging.Local(),
+    val logging: NodeLogging = NodeLogging()
 ) {
     private lateinit var cordappsDirShare: AzureFilesDirectory
     private lateinit var driversDirShare: AzureFilesDirectory
@@ -34,8 +43,9 @@ class NodeSetup(
     private var initialRegistrationResult: InitialRegistrationResult? = null
     private var nodeStoresSecrets: NodeStoresSecrets? = null
     private var databaseSecrets: NodeDatabaseSecrets? = null
-    private var configDirectory: AzureFilesDirectory? = null
+    private var configFile: ConfigMapFile? = null
     private var generatedNodeConfig: String? = null
+    private var databaseMigrated = false
 
     fun generateNodeConfig(
         nodeX500: String,
@@ -47,6 +57,7 @@ class NodeSetup(
         rpcUsername: String,
         rpcPassword: String
     ): String {
+        val tuning = NodeTuning.forResources(resources, dbParams)
         val nodeConfigParams = NodeConfigParams.builder()
             .withX500Name(nodeX500)
             .withEmailAddress(nodeEmail)
@@ -67,20 +78,31 @@ class NodeSetup(
             .withRpcUsername(rpcUsername)
             .withRpcPassword(rpcPassword)
             .withDataSourceClassName(dbParams.type.dataSourceClass)
-            .withDataSourceURL(dbParams.jdbcURL)
+            .withDataSourceURL(dbParams.nodeJdbcURL)
             .withDataSourceUsername(NodeConfigParams.NODE_DATASOURCE_USERNAME_ENV_VAR_NAME.toEnvVar())
             .withDataSourcePassword(NodeConfigParams.NODE_DATASOURCE_PASSWORD_ENV_VAR_NAME.toEnvVar())
             .withAzureKeyVaultConfPath(NodeConfigParams.NODE_AZ_KV_CONFIG_PATH)
+            .withFlowThreadPoolSize(tuning.flowThreadPoolSize)
+            .withRpcThreadPoolSize(tuning.rpcThreadPoolSize)
+            .withDataSourceMaxPoolSize(tuning.dataSourceMaxPoolSize)
+            .withTransactionCacheSizeMegaBytes(tuning.transactionCacheSizeMegaBytes)
+            .withAttachmentContentCacheSizeMegaBytes(tuning.attachmentContentCacheSizeMegaBytes)
+            .withMaximumMessagingBatchSize(tuning.maximumMessagingBatchSize)
+            .withP2pConfirmationWindowSize(tuning.p2pConfirmationWindowSize)
+            .withDatabaseRunMigration(!migrateSchemaBeforeStartup)
             .build()
 
         return ConfigGenerators.generateConfigFromParams(nodeConfigParams).also { this.generatedNodeConfig = it }
     }
 
-    fun uploadNodeConfig(): AzureFilesDirectory {
-        val configDirectory = shareCreator.createDirectoryFor("node-config", api)
-        configDirectory.modernClient.rootDirectoryClient.getFileClient("node.conf")
-            .uploadFromByteArray(generatedNodeConfig!!.toByteArray(Charsets.UTF_8))
-        return configDirectory.also { this.configDirectory = it }
+    fun uploadNodeConfig(): ConfigMapFile {
+        return ConfigMapCreator.createConfigFile(
+            "node-config-${nodeId}",
+            NodeConfigParams.NODE_CONFIG_FILENAME,
+            generatedNodeConfig!!,
+            namespace,
+            api
+        ).also { this.configFile = it }
     }
 
     fun createNodeDatabaseSecrets(): NodeDatabaseSecrets {
@@ -160,19 +182,20 @@ class NodeSetup(
     ): InitialRegistrationResult {
         val jobName = "initial-registration-${nodeId}"
 
-        val initialRegResultDir = shareCreator.createDirectoryFor("node-initial-reg-result", api)
-        val networkParamsDir = shareCreator.createDirectoryFor("network-params-result", api)
+        val initialRegResultDir = shareCreator.createDirectoryFor("node-initial-reg-result-${nodeId}", api)
+        val networkParamsDir = shareCreator.createDirectoryFor("network-params-result-${nodeId}", api)
 
         val initialRegistrationJob = initialRegistrationJob(
             jobName,
-            configDirectory!!,
+            configFile!!,
             keyVaultSecrets,
             databaseSecrets!!,
             artemisSecrets,
             nodeStoresSecrets!!,
             initialRegResultDir,
             networkParamsDir,
-            trustRootConfig
+            trustRootConfig,
+            images
         )
 
         simpleApply.create(initialRegistrationJob, namespace, api)
@@ -184,8 +207,41 @@ class NodeSetup(
         }
     }
 
+    suspend fun runDatabaseMigration(
+        keyVaultSecrets: KeyVaultSecrets,
+        artemisSecrets: ArtemisSecrets
+    ) {
+        if (!migrateSchemaBeforeStartup) {
+            throw IllegalStateException("node is configured to migrate its schema on startup")
+        }
+        if (databaseSecrets == null || nodeStoresSecrets == null || configFile == null) {
+            throw IllegalStateException("must upload config and create database and keystore secrets before migrating the database")
+        }
+        if (!this::driversDirShare.isInitialized || !this::cordappsDirShare.isInitialized) {
+            throw IllegalStateException("must copy drivers and cordapps before migrating the database")
+        }
+        val jobName = "database-migration-${nodeId}"
+        val migrationJob = databaseMigrationJob(
+            jobName,
+            configFile!!,
+            driversDirShare,
+            cordappsDirShare,
+            keyVaultSecrets,
+            databaseSecrets!!,
+            artemisSecrets,
+            nodeStoresSecrets!!,
+            jarStaging,
+            images
+        )
+
+        simpleApply.create(migrationJob, namespace, api)
+        waitForJob(migrationJob, namespace, api, Duration.ofMinutes(15))
+        dumpLogsForJob(migrationJob, namespace, api)
+        databaseMigrated = true
+    }
+
     fun copyToDriversDir() {
-        val driversDirShare = shareCreator.createDirectoryFor("node-drivers", api)
+        val driversDirShare = shareCreator.createDirectoryFor("node-drivers-${nodeId}", api)
         val allDriverJars = (hsm.requiredDriverJars + dbParams.type.driverDependencies).flatMap {
             GradleUtils.getArtifactAndDependencies(it.driverGroup, it.driverArtifact, it.driverVersion)
         }
@@ -204,26 +260,48 @@ class NodeSetup(
         this.driversDirShare = driversDirShare
     }
 
-    fun deploy() {
+    suspend fun deploy() {
+        //the node config no longer migrates on startup, so a node started before its migration job would run against a stale schema
+        if (migrateSchemaBeforeStartup && !databaseMigrated) {
+            throw IllegalStateException("must run the database migration job before deploying node $nodeId")
+        }
+        val sidecars = listOfNotNull(dbParams.pooler?.let { poolerConfig ->
+            pgBouncerSidecar(poolerConfig, databaseSecrets!!, NodeTuning.forResources(resources, dbParams).dataSourceMaxPoolSize, images)
+        })
+        val loggingConfigFile = ConfigMapCreator.createConfigFile(
+            "node-logging-${nodeId}",
+            NodeLoggingConfigParams.NODE_LOGGING_CONFIG_FILENAME,
+            logging.generateConfig(),
+            namespace,
+            api
+        )
+        logging.createLogClaim(nodeId, namespace, api)
         val nodeDeployment = createNodeDeployment(
             namespace,
             nodeId,
             artemisStoresDir,
             initialRegistrationResult!!.certificatesDir,
-            configDirectory!!,
+            configFile!!,
+            loggingConfigFile,
             driversDirShare,
             cordappsDirShare,
             artemisSecrets,
             nodeStoresSecrets!!,
             vaultSecrets,
-            databaseSecrets!!
+            databaseSecrets!!,
+            resources,
+            images,
+            sidecars,
+            jarStaging,
+            logging
         )
         println(Yaml.dump(nodeDeployment))
         simpleApply.create(nodeDeployment, namespace, api)
+        waitForRollout(nodeDeployment.metadata?.name!!, namespace, api, Duration.ofMinutes(15))
     }
 
     fun copyToCordappsDir(cordapps: List<File>, gradleCordapps: List<File>) {
-        val cordappsDir = shareCreator.createDirectoryFor("node-cordapps", api)
+        val cordappsDir = shareCreator.createDirectoryFor("node-cordapps-${nodeId}", api)
 
         (gradleCordapps + cordapps).forEach { cordapp ->
             println("Uploading cordapp: ${cordapp.absolutePath}")
@@ -0,0 +1,57 @@
+package net.corda.deployment.node
+
+import io.kubernetes.client.custom.IntOrString
+import io.kubernetes.client.custom.Quantity
+import io.kubernetes.client.openapi.models.V1Container
+import io.kubernetes.client.openapi.models.V1ContainerBuilder
+import io.kubernetes.client.openapi.models.V1ContainerPortBuilder
+import net.corda.deployment.node.database.ConnectionPoolerConfig
+import net.corda.deployment.node.kubernetes.PinnedImages
+
+const val PGBOUNCER_IMAGE = "edoburu/pgbouncer:1.14.0"
+
+fun pgBouncerSidecar(
+    poolerConfig: ConnectionPoolerConfig,
+    databaseSecrets: NodeDatabaseSecrets,
+    poolSize: Int,
+    images: PinnedImages
+): V1Container {
+    return V1ContainerBuilder()
+        .withName("pgbouncer")
+        .withImage(images.pinned(PGBOUNCER_IMAGE))
+        .withImagePullPolicy("IfNotPresent")
+        .withEnv(
+            keyValueEnvVar("DB_HOST", poolerConfig.serverHost),
+            keyValueEnvVar("DB_PORT", poolerConfig.serverPort.toString()),
+            keyValueEnvVar("DB_NAME", poolerConfig.databaseName),
+            secretEnvVar("DB_USER", databaseSecrets.secretName, databaseSecrets.nodeDataSourceUsernameKey),
+            secretEnvVar("DB_PASSWORD", databaseSecrets.secretName, databaseSecrets.nodeDatasourcePasswordKey),
+            keyValueEnvVar("LISTEN_PORT", ConnectionPoolerConfig.PGBOUNCER_PORT.toString()),
+            keyValueEnvVar("AUTH_TYPE", "md5"),
+            //hikari holds its connections for the life of the node, so only transaction pooling frees server connections
+            //between transactions. the local jdbc url disables server side prepared statements to make this safe
+            keyValueEnvVar("POOL_MODE", "transaction"),
+            keyValueEnvVar("DEFAULT_POOL_SIZE", poolSize.toString()),
+            keyValueEnvVar("MAX_CLIENT_CONN", (poolSize * 2).toString()),
+            keyValueEnvVar("SERVER_TLS_SSLMODE", "require")
+        )
+        .withPorts(
+            V1ContainerPortBuilder().withName("pgbouncer").withContainerPort(ConnectionPoolerConfig.PGBOUNCER_PORT).build()
+        )
+        .withNewReadinessProbe()
+        .withNewTcpSocket()
+        .withPort(IntOrString(ConnectionPoolerConfig.PGBOUNCER_PORT))
+        .endTcpSocket()
+        .withPeriodSeconds(5)
+        .endReadinessProbe()
+        .withNewResources()
+        .withRequests(
+            listOf(
+                "memory" to Quantity("64Mi"), "cpu" to Quantity(
+                    "0.1"
+                )
+            ).toMap()
+        )
+        .endResources()
+        .build()
+}
@@ -4,11 +4,17 @@ package net.corda.deployment.node
 
 import com.azure.storage.file.share.ShareFileClient
 import com.github.ajalt.clikt.core.CliktCommand
+import com.github.ajalt.clikt.core.NoOpCliktCommand
+import com.github.ajalt.clikt.core.subcommands
+import com.github.ajalt.clikt.parameters.options.default
+import com.github.ajalt.clikt.parameters.options.flag
 import com.github.ajalt.clikt.parameters.options.multiple
 import com.github.ajalt.clikt.parameters.options.option
 import com.github.ajalt.clikt.parameters.options.required
 import com.github.ajalt.clikt.parameters.options.transformAll
+import com.github.ajalt.clikt.parameters.types.choice
 import com.github.ajalt.clikt.parameters.types.file
+import com.github.ajalt.clikt.parameters.types.int
 import com.microsoft.azure.credentials.AzureCliCredentials
 import com.microsoft.azure.management.Azure
 import com.microsoft.azure.management.resources.fluentcore.arm.Region
@@ -16,6 +22,10 @@ import com.microsoft.rest.LogLevel
 import freighter.utils.GradleUtils
 import kotlinx.coroutines.runBlocking
 import net.corda.deployment.node.infrastructure.AzureInfrastructureDeployer
+import net.corda.deployment.node.kubernetes.ClusterPoolProfiles
+import net.corda.deployment.node.kubernetes.ClusterTopology
+import net.corda.deployment.node.networking.ClusterNetworkPlan
+import net.corda.deployment.node.networking.ClusterNetworkingMode
 import net.corda.deployment.node.storage.uploadFromByteArray
 import org.bouncycastle.jce.provider.BouncyCastleProvider
 import java.io.File
@@ -81,6 +91,10 @@ class InitialSetupCommand : CliktCommand(name = "firstNode") {
     val trustRootFile: File? by option("-f", "--trust-root-f", help = "the path to load the network-trust-root from").file()
     val trustRootPassword: String by option("-p", "--trust-root-password", help = "the password for the network-trust-root").required()
     val csrToken: String? by option("--csrToken", help = "a OTK to pass to the idManager when requesting a CSR")
+    val networkingMode: ClusterNetworkingMode by option("--networking", help = "the network plugin to create the clusters with")
+        .choice("kubenet" to ClusterNetworkingMode.KUBENET, "azure-cni" to ClusterNetworkingMode.AZURE_CNI)
+        .default(ClusterNetworkingMode.KUBENET)
+    val zonal: Boolean by option("--zonal", help = "spread the agent pools over availability zones, pinning the messaging pool to one zone").flag()
 
     val cordapps: List<File> by option("-c", "--cordapp", help = "Path to cordapp to load into the node").file(
         mustExist = true,
@@ -111,8 +125,78 @@ class InitialSetupCommand : CliktCommand(name = "firstNode") {
                 trustRootFile,
                 trustRootPassword,
                 cordapps,
+                gradleCordapps,
+                networkingMode,
+                if (zonal) ClusterTopology.ZONAL else ClusterTopology.REGIONAL
+            )
+        }
+    }
+}
+
+class AddNodesCommand : CliktCommand(name = "addNodes") {
+
+    val subscriptionId: String by option("-s", "--subscription", help = "Azure Subscription").required()
+    val resourceGroupName: String by option("-g", "--resource-group", help = "Azure Resource Group to use").required()
+    val infrastructureFile: File by option("-i", "--infrastructure", help = "the file the existing infrastructure was persisted to").file(
+        mustExist = true,
+        canBeDir = false
+    ).required()
+    val namespace: String by option("--namespace", help = "the namespace the bridge and artemis are deployed into").default("corda-zone-2")
+    val x500Names: List<String> by option("-x", "--x500", help = "X500 Name to use for a node, may be repeated").multiple(required = true)
+    val email: String by option("-e", "--email", help = "email address to use when registering the nodes").required()
+    val doormanURL: String by option("-d", "--doorman", help = "the doorman address to use when registering the nodes").required()
+    val networkMapURL: String by option("-n", "--network-map", help = "the networkmap to use when registering the nodes").required()
+    val trustRootURL: String? by option("-t", "--trust-root-url", help = "the url to download the network-trust-root from")
+    val trustRootPassword: String by option("-p", "--trust-root-password", help = "the password for the network-trust-root").required()
+    val parallelism: Int by option("--parallelism", help = "the maximum number of nodes to provision at once").int().default(4)
+    val nodeImage: String? by option("--node-image", help = "a node image built by buildNodeImage with the cordapps and drivers already layered in")
+    val verboseNodeLogging: Boolean by option("--verbose-node-logging", help = "also write node logs to the console at DEBUG level").flag()
+
+    val cordapps: List<File> by option("-c", "--cordapp", help = "Path to cordapp to load into the nodes").file(
+        mustExist = true,
+        canBeDir = false
+    ).multiple()
+
+    val gradleCordapps: List<File> by option(
+        "--gradle-cordapp",
+        help = "the gradle coordinates of a cordapp to load into the nodes <group>:<artifact>:<version>"
+    ).transformAll { gradleCords ->
+        gradleCords.flatMap { gradleCord ->
+            val (group, artifact, version) = gradleCord.split(":")
+            GradleUtils.getArtifactAndDependencies(group, artifact, version).map { it.toFile() }
+        }
+    }
+
+    override fun run() {
+        runBlocking {
+            val mngAzure: Azure = Azure.configure()
+                .withLogLevel(LogLevel.BASIC)
+                .authenticate(AzureCliCredentials.create())
+                .withSubscription(subscriptionId)
+            val resourceGroup = mngAzure.resourceGroups().getByName(resourceGroupName)
+                ?: throw IllegalStateException("resource group $resourceGroupName does not exist - run firstNode first")
+            val infrastructure = AzureInfrastructureDeployer(mngAzure, resourceGroup).setupInfrastructure(infrastructureFile)
+            //nothing is built until the pulls complete, so every workload references the same digests
+            infrastructure.prePullImages(listOfNotNull(nodeImage))
+            val deployedArtemis = infrastructure.setupArtemis(namespace)
+            val onboardedNodes = NodeOnboarding(
+                infrastructure,
+                namespace,
+                deployedArtemis,
+                infrastructure.bridgeSetup(namespace),
+                parallelism,
+                nodeImage?.let { JarStaging.Baked(it) } ?: JarStaging.Local(),
+                if (verboseNodeLogging) NodeLogging(verbose = true, level = "DEBUG") else NodeLogging()
+            ).onboard(
+                x500Names,
+                email,
+                doormanURL,
+                networkMapURL,
+                TrustRootConfig(trustRootURL, trustRootPassword),
+                cordapps,
                 gradleCordapps
             )
+            onboardedNodes.forEach { println("deployed node: ${it.x500Name}") }
         }
     }
 }
@@ -129,7 +213,9 @@ suspend fun performDeployment(
     trustRootFile: File?,
     trustRootPassword: String,
     diskCordapps: List<File>,
-    gradleCordapps: List<File>
+    gradleCordapps: List<File>,
+    networkingMode: ClusterNetworkingMode = ClusterNetworkingMode.KUBENET,
+    topology: ClusterTopology = ClusterTopology.REGIONAL
 ) {
 
     val FILE = "C:\\Users\\roast\\AppData\\Roaming\\JetBrains\\IntelliJIdea2020.2\\scratches\\scratch_3.json"
@@ -144,7 +230,8 @@ suspend fun performDeployment(
 
     val namespaceName = "corda-zone-2"
     val infrastructureDeployer = AzureInfrastructureDeployer(mngAzure, resourceGroup = resourceGroup)
-    val infrastructure = infrastructureDeployer.setupInfrastructure(File(FILE))
+    val infrastructure = infrastructureDeployer.setupInfrastructure(File(FILE), ClusterNetworkPlan(networkingMode, ClusterPoolProfiles.DEFAULT.copy(topology = topology)))
+    infrastructure.prePullImages()
     infrastructure.createNamespace(namespaceName)
     val deployedArtemis = infrastructure.setupArtemis(namespaceName)
     println()
@@ -177,8 +264,9 @@ suspend fun performDeployment(
 
 
 //    val nodeSpecificInfra: NodeAzureInfrastructure = infrastructure.nodeSpecificInfrastructure(x500Name.shortSha())
+//    //database, key vault, service principal and storage are provisioned concurrently
+//    val (nodeSetup, keyVaultSetup) = nodeSpecificInfra.provisionNode(namespace)
 //    //configure key vault for node
-//    val keyVaultSetup = nodeSpecificInfra.keyVaultSetup(namespace)
 //    keyVaultSetup.generateKeyVaultCryptoServiceConfig()
 //    val vaultSecrets = keyVaultSetup.createKeyVaultSecrets()
 
@@ -189,7 +277,6 @@ suspend fun performDeployment(
     println()
 
 //    //configure and register the node
-//    val nodeSetup: NodeSetup = nodeSpecificInfra.nodeSetup(namespace)
 //    nodeSetup.generateNodeConfig(
 //        x500Name,
 //        email,
@@ -205,6 +292,10 @@ suspend fun performDeployment(
 //    nodeSetup.uploadNodeConfig()
 //    nodeSetup.createNodeDatabaseSecrets()
 //    val nodeStoreSecrets = nodeSetup.createNodeKeyStoreSecrets()
+//    nodeSetup.copyToDriversDir()
+//    nodeSetup.copyToCordappsDir(diskCordapps, gradleCordapps)
+//    //schema migration does not depend on registration or the firewall, so take it off the critical path
+//    val databaseMigration = async { nodeSetup.runDatabaseMigration(vaultSecrets, artemisSecrets) }
 //    val initialRegistrationResult = nodeSetup.performInitialRegistration(vaultSecrets, artemisSecrets, trustRootConfig)
 //
 //    //setup the firewall tunnel
@@ -224,13 +315,13 @@ suspend fun performDeployment(
 //    //configure and deploy the bridge
 //    val bridgeSetup: BridgeSetup = infrastructure.bridgeSetup(namespace)
 //    bridgeSetup.generateBridgeStoreSecrets()
-//    bridgeSetup.importNodeKeyStoreIntoBridge(nodeStoreSecrets, initialRegistrationResult)
+//    bridgeSetup.importNodeKeyStoreIntoBridge(nodeSetup.nodeId, nodeStoreSecrets, initialRegistrationResult)
 //    bridgeSetup.copyTrustStoreFromNodeRegistrationResult(initialRegistrationResult)
 //    bridgeSetup.copyBridgeTunnelStoreComponents(firewallTunnelStores)
 //    bridgeSetup.copyBridgeArtemisStoreComponents(generatedArtemisStores)
 //    bridgeSetup.copyNetworkParametersFromNodeRegistrationResult(initialRegistrationResult)
 //    bridgeSetup.createTunnelSecrets(firewallTunnelSecrets)
-//    bridgeSetup.generateBridgeConfig(deployedArtemis.serviceName, floatDeployment.internalService.getInternalAddress())
+//    bridgeSetup.generateBridgeConfig(deployedArtemis.serviceName, floatDeployment.internalAddresses())
 //    bridgeSetup.uploadBridgeConfig()
 //    bridgeSetup.createArtemisSecrets(artemisSecrets)
 //    val bridgeDeployment = bridgeSetup.deploy()
@@ -239,16 +330,14 @@ suspend fun performDeployment(
 //    nodeSetup.copyArtemisStores(generatedArtemisStores)
 //    nodeSetup.createArtemisSecrets(artemisSecrets)
 //    nodeSetup.createKeyVaultSecrets(vaultSecrets)
-//    nodeSetup.copyToDriversDir()
-//    nodeSetup.copyToCordappsDir(diskCordapps, gradleCordapps)
+//    databaseMigration.await()
 //    nodeSetup.deploy()
 
-    //ADD SECOND NODE
+    //ADD SECOND NODE - see AddNodesCommand for onboarding many nodes with a single bridge restart
 //    val otherX500 = "O=BigCorporation2,L=New York,C=US"
 //    val nextNodeInfra = infrastructure.nodeSpecificInfrastructure(otherX500.shortSha())
 //
-//    val nextNodeKVSetup = nextNodeInfra.keyVaultSetup(namespace)
-//    val nextNodeSetup = nextNodeInfra.nodeSetup(namespace)
+//    val (nextNodeSetup, nextNodeKVSetup) = nextNodeInfra.provisionNode(namespace)
 //    nextNodeKVSetup.generateKeyVaultCryptoServiceConfig()
 //    val nextNodeKVSecrets = nextNodeKVSetup.createKeyVaultSecrets()
 //
@@ -267,6 +356,7 @@ suspend fun performDeployment(
 //    val nextNodeStoreSecrets = nextNodeSetup.createNodeKeyStoreSecrets()
 //    val nextNodeInitialRegistrationResult = nextNodeSetup.performInitialRegistration(nextNodeKVSecrets, artemisSecrets, trustRootConfig)
 //    bridgeSetup.importNodeKeyStoreIntoBridge(
+//        nextNodeSetup.nodeId,
 //        nextNodeStoreSecrets,
 //        nextNodeInitialRegistrationResult
 //    )
@@ -288,11 +378,10 @@ suspend fun performDeployment(
 }
 
 
-@ExperimentalUnsignedTypes
 fun main(args: Array<String>) {
     val bouncyCastleProvider = BouncyCastleProvider()
     Security.addProvider(bouncyCastleProvider)
-    InitialSetupCommand().main(args)
+    NoOpCliktCommand(name = "cloud-deploy").subcommands(InitialSetupCommand(), AddNodesCommand()).main(args)
 }
 
 fun ShareFileClient.createFrom(source: ShareFileClient, timeout: Duration = Duration.ofMinutes(5)) {
@@ -0,0 +1,84 @@
+package net.corda.deployment.node
+
+import io.kubernetes.client.custom.IntOrString
+import io.kubernetes.client.custom.Quantity
+import io.kubernetes.client.openapi.models.*
+import net.corda.deployment.node.kubernetes.PinnedImages
+import net.corda.deployment.node.kubernetes.WorkloadPlacement
+
+const val BRIDGE_ZOOKEEPER_NAME = "bridge-zookeeper"
+const val ZOOKEEPER_CLIENT_PORT = 2181
+//the corda firewall curator client is built against the 3.5.4-beta protocol
+const val ZOOKEEPER_IMAGE = "zookeeper:3.5.4-beta"
+private const val ZOOKEEPER_CLIENT_PORT_NAME = "zk-client"
+
+fun createZookeeperDeployment(namespace: String, images: PinnedImages): V1Deployment {
+    return V1DeploymentBuilder()
+        .withKind("Deployment")
+        .withApiVersion("apps/v1")
+        .withNewMetadata()
+        .withNamespace(namespace)
+        .withName(BRIDGE_ZOOKEEPER_NAME)
+        .withLabels(listOf("dmz" to "false", "run" to BRIDGE_ZOOKEEPER_NAME).toMap())
+        .endMetadata()
+        .withNewSpec()
+        .withNewSelector()
+        .withMatchLabels(listOf("run" to BRIDGE_ZOOKEEPER_NAME).toMap())
+        .endSelector()
+        .withReplicas(1)
+        .withNewTemplate()
+        .withNewMetadata()
+        .withLabels(listOf("run" to BRIDGE_ZOOKEEPER_NAME).toMap())
+        .endMetadata()
+        .withNewSpec()
+        .withNodeSelector(WorkloadPlacement.ARTEMIS.nodeSelector)
+        .withTolerations(WorkloadPlacement.ARTEMIS.tolerations())
+        .addNewContainer()
+        .withName(BRIDGE_ZOOKEEPER_NAME)
+        .withImage(images.pinned(ZOOKEEPER_IMAGE))
+        .withImagePullPolicy("IfNotPresent")
+        .withPorts(
+            V1ContainerPortBuilder().withName(ZOOKEEPER_CLIENT_PORT_NAME).withContainerPort(ZOOKEEPER_CLIENT_PORT).build()
+        )
+        .withNewReadinessProbe()
+        .withNewTcpSocket()
+        .withPort(IntOrString(ZOOKEEPER_CLIENT_PORT))
+        .endTcpSocket()
+        .withPeriodSeconds(5)
+        .endReadinessProbe()
+        .withNewResources()
+        .withRequests(
+            listOf(
+                "memory" to Quantity("256Mi"), "cpu" to Quantity(
+                    "0.1"
+                )
+            ).toMap()
+        )
+        .endResources()
+        .endContainer()
+        .endSpec()
+        .endTemplate()
+        .endSpec()
+        .build()
+}
+
+fun createZookeeperService(zookeeperDeployment: V1Deployment): V1Service {
+    return V1ServiceBuilder()
+        .withKind("Service")
+        .withApiVersion("v1")
+        .withNewMetadata()
+        .withNamespace(zookeeperDeployment.metadata?.namespace)
+        .withName(zookeeperDeployment.metadata?.name)
+        .withLabels(listOf("run" to zookeeperDeployment.metadata?.name).toMap())
+        .endMetadata()
+        .withNewSpec()
+        .withType("ClusterIP")
+        .withPorts(
+            V1ServicePortBuilder().withPort(ZOOKEEPER_CLIENT_PORT)
+                .withProtocol("TCP")
+                .withTargetPort(IntOrString(ZOOKEEPER_CLIENT_PORT))
+                .withName(ZOOKEEPER_CLIENT_PORT_NAME).build()
+        ).withSelector(listOf("run" to zookeeperDeployment.metadata?.name).toMap())
+        .endSpec()
+        .build()
+}
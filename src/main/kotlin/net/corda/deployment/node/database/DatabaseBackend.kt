@@ -0,0 +1,14 @@
+package net.corda.deployment.node.database
+
+sealed class DatabaseBackend {
+
+    data class DedicatedSqlServer(val profile: SqlDatabaseProfile = SqlDatabaseProfile.STANDARD_S2) : DatabaseBackend()
+
+    //all nodes using this backend share one logical server and elastic pool
+    data class SqlElasticPool(val poolProfile: SqlElasticPoolProfile = SqlElasticPoolProfile.STANDARD_100) : DatabaseBackend()
+
+    data class Postgres(
+        val profile: PostgresServerProfile = PostgresServerProfile.GENERAL_PURPOSE_GEN5_2,
+        val withConnectionPooler: Boolean = true
+    ) : DatabaseBackend()
+}
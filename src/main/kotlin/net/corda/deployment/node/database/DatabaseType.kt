@@ -21,6 +21,19 @@ enum class DatabaseType(
         driverClass = "com.microsoft.sqlserver.jdbc.SQLServerDriver"
     ),
 
+    POSTGRES(
+        "org.postgresql.ds.PGSimpleDataSource",
+        needsDriver = true,
+        driverDependencies = listOf(
+            GradleDependency(
+                "org.postgresql",
+                "postgresql",
+                "42.2.16"
+            )
+        ),
+        driverClass = "org.postgresql.Driver"
+    ),
+
     H2("org.h2.jdbcx.JdbcDataSource", false, emptyList())
 }
 
@@ -28,8 +41,28 @@ data class DatabaseConfigParams(
     val jdbcURL: String,
     val username: String,
     val password: String,
-    val type: DatabaseType
-)
+    val type: DatabaseType,
+    val maxConnections: Int = 100,
+    val pooler: ConnectionPoolerConfig? = null
+) {
+    //the node talks to the pooler when one is present, jobs that run without the sidecar must use jdbcURL
+    val nodeJdbcURL: String
+        get() = pooler?.localJdbcURL ?: jdbcURL
+}
+
+data class ConnectionPoolerConfig(
+    val serverHost: String,
+    val serverPort: Int,
+    val databaseName: String
+) {
+    val localJdbcURL: String
+        //a named prepared statement only exists on the server connection that prepared it, which changes per transaction
+        get() = "jdbc:postgresql://localhost:$PGBOUNCER_PORT/$databaseName?prepareThreshold=0"
+
+    companion object {
+        const val PGBOUNCER_PORT = 6432
+    }
+}
 
 val H2_DB = DatabaseConfigParams(
     jdbcURL = "jdbc:h2:file:\"\${baseDirectory}\"/persistence;DB_CLOSE_ON_EXIT=FALSE;WRITE_DELAY=0;LOCK_TIMEOUT=10000",
@@ -5,43 +5,51 @@ import com.microsoft.azure.management.Azure
 import com.microsoft.azure.management.postgresql.v2017_12_01.*
 import com.microsoft.azure.management.postgresql.v2017_12_01.implementation.PostgreSQLManager
 import com.microsoft.azure.management.resources.ResourceGroup
+import kotlinx.coroutines.delay
+import net.corda.deployment.node.createSuspending
 import net.corda.deployment.node.networking.ClusterNetwork
 import org.apache.commons.lang3.RandomStringUtils
 
-class PostgresServerCreator {
+class PostgresServerCreator(
+    val azure: Azure,
+    val resourceGroup: ResourceGroup
+) {
 
     companion object {
         val PG_AZURE_NAMING = "Microsoft.DBforPostgreSQL"
+        const val CORDA_DATABASE_NAME = "corda"
     }
 
-    fun create(
-        subscriptionId: String,
-        resourceGroup: ResourceGroup,
-        mngAzure: Azure,
-        network: ClusterNetwork
-    ) {
+    suspend fun createPostgresDBForCorda(
+        clusterNetwork: ClusterNetwork,
+        profile: PostgresServerProfile = PostgresServerProfile.GENERAL_PURPOSE_GEN5_2
+    ): PostgresDatabaseAndCredentials {
 
-        val registration = mngAzure.providers().register(PG_AZURE_NAMING)
+        azure.providers().register(PG_AZURE_NAMING)
 
-        while (mngAzure.providers().getByName(PG_AZURE_NAMING).registrationState() == "Registering") {
+        while (azure.providers().getByName(PG_AZURE_NAMING).registrationState() == "Registering") {
             println("Waiting for PG DB provider to be registered on subscription")
-            Thread.sleep(1000)
+            delay(1000)
         }
 
+        val instanceId = RandomStringUtils.randomAlphanumeric(16).toLowerCase()
+        val adminUsername = "corda${RandomStringUtils.randomAlphanumeric(16).toLowerCase()}"
+        val adminPassword = RandomStringUtils.randomAlphanumeric(20) + "Aa1"
 
-        val postgreSQLManager = PostgreSQLManager.authenticate(AzureCliCredentials.create(), subscriptionId)
-        val pgServer = postgreSQLManager.servers().define("corda-pg-${RandomStringUtils.randomAlphanumeric(8).toLowerCase()}")
+        val postgreSQLManager = PostgreSQLManager.authenticate(AzureCliCredentials.create(), azure.subscriptionId())
+        println("creating postgres server for node database with profile: $profile")
+        val pgServer = postgreSQLManager.servers().define("corda-pg-$instanceId")
             .withRegion(resourceGroup.region().name())
             .withExistingResourceGroup(resourceGroup.name())
             .withProperties(
                 ServerPropertiesForDefaultCreate()
-                    .withAdministratorLogin(RandomStringUtils.randomAlphanumeric(20).toLowerCase())
-                    .withAdministratorLoginPassword(RandomStringUtils.randomAlphanumeric(20))
-                    .withVersion(ServerVersion.NINE_FULL_STOP_SIX)
+                    .withAdministratorLogin(adminUsername)
+                    .withAdministratorLoginPassword(adminPassword)
+                    .withVersion(ServerVersion.ONE_ONE)
                     .withStorageProfile(
                         StorageProfile()
                             .withStorageAutogrow(StorageAutogrow.ENABLED)
-                            .withStorageMB(250 * 1024)
+                            .withStorageMB(profile.storageMB)
                             .withBackupRetentionDays(12)
                             .withGeoRedundantBackup(GeoRedundantBackup.DISABLED)
                     )
@@ -49,24 +57,70 @@ class PostgresServerCreator {
             )
             .withSku(
                 Sku()
-                    .withName("B_Gen5_2")
-                    .withTier(SkuTier.BASIC)
-            ).create()
+                    .withName(profile.skuName)
+                    .withTier(profile.tier)
+            ).createSuspending()
 
-        val database = postgreSQLManager
+        postgreSQLManager
             .databases()
-            .define("new-database")
+            .define(CORDA_DATABASE_NAME)
             .withExistingServer(resourceGroup.name(), pgServer.name())
-            .create()
+            .createSuspending()
 
-//        mngAzure.networks().getById(network.createdNetwork.id()).subnets().map { it.value. }
+        val nodeSubnetId = clusterNetwork.createdNetwork.subnets()[clusterNetwork.nodeSubnetName]?.inner()?.id()
+            ?: throw IllegalStateException("could not find subnet ${clusterNetwork.nodeSubnetName} for postgres vnet rule")
 
+        //the node subnet already carries the Microsoft.Sql service endpoint which also covers postgres
         postgreSQLManager.virtualNetworkRules().define("cluster-vnet-rule")
             .withExistingServer(resourceGroup.name(), pgServer.name())
-            .withVirtualNetworkSubnetId("")
+            .withVirtualNetworkSubnetId(nodeSubnetId)
             .withIgnoreMissingVnetServiceEndpoint(false)
+            .createSuspending()
 
+        return PostgresDatabaseAndCredentials(
+            serverName = pgServer.name(),
+            fullyQualifiedDomainName = pgServer.fullyQualifiedDomainName(),
+            databaseName = CORDA_DATABASE_NAME,
+            adminUsername = adminUsername,
+            adminPassword = adminPassword,
+            maxConnections = profile.maxConnections
+        )
     }
+}
 
+//maxConnections is the azure single server connection limit for the sku
+enum class PostgresServerProfile(
+    val skuName: String,
+    val tier: SkuTier,
+    val maxConnections: Int,
+    val storageMB: Int = 250 * 1024
+) {
+    GENERAL_PURPOSE_GEN5_2("GP_Gen5_2", SkuTier.GENERAL_PURPOSE, 150),
+    GENERAL_PURPOSE_GEN5_4("GP_Gen5_4", SkuTier.GENERAL_PURPOSE, 250),
+    GENERAL_PURPOSE_GEN5_8("GP_Gen5_8", SkuTier.GENERAL_PURPOSE, 480),
+    MEMORY_OPTIMIZED_GEN5_2("MO_Gen5_2", SkuTier.MEMORY_OPTIMIZED, 300),
+    MEMORY_OPTIMIZED_GEN5_4("MO_Gen5_4", SkuTier.MEMORY_OPTIMIZED, 500),
+    MEMORY_OPTIMIZED_GEN5_8("MO_Gen5_8", SkuTier.MEMORY_OPTIMIZED, 960)
+}
 
-}
\ No newline at end of file
+data class PostgresDatabaseAndCredentials(
+    val serverName: String,
+    val fullyQualifiedDomainName: String,
+    val databaseName: String,
+    val adminUsername: String,
+    val adminPassword: String,
+    val maxConnections: Int
+) {
+    fun toNodeDbParams(withConnectionPooler: Boolean): DatabaseConfigParams {
+        val jdbcString = "jdbc:postgresql://$fullyQualifiedDomainName:5432/$databaseName?sslmode=require"
+        //azure single server expects logins in the form user@server
+        return DatabaseConfigParams(
+            jdbcString,
+            "$adminUsername@$serverName",
+            adminPassword,
+            DatabaseType.POSTGRES,
+            maxConnections,
+            if (withConnectionPooler) ConnectionPoolerConfig(fullyQualifiedDomainName, 5432, databaseName) else null
+        )
+    }
+}
@@ -2,22 +2,32 @@ package net.corda.deployment.node.database
 
 import com.microsoft.azure.management.Azure
 import com.microsoft.azure.management.resources.ResourceGroup
-import com.microsoft.azure.management.sql.SqlDatabaseStandardServiceObjective
-import com.microsoft.azure.management.sql.SqlServer
+import com.microsoft.azure.management.sql.*
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import net.corda.deployment.node.createSuspending
 import net.corda.deployment.node.networking.ClusterNetwork
 import org.apache.commons.lang3.RandomStringUtils
 
 class SqlServerCreator(
     val azure: Azure,
-    val resourceGroup: ResourceGroup
+    val resourceGroup: ResourceGroup,
+    private var sharedServer: SharedSqlServerCredentials? = null,
+    private val onSharedServerCreated: (SharedSqlServerCredentials) -> Unit = {}
 ) {
 
-    fun createSQLServerDBForCorda(clusterNetwork: ClusterNetwork): DatabaseAndCredentials {
+    private val sharedServerLock = Mutex()
+
+    suspend fun createSQLServerDBForCorda(
+        clusterNetwork: ClusterNetwork,
+        profile: SqlDatabaseProfile = SqlDatabaseProfile.STANDARD_S2
+    ): DatabaseAndCredentials {
 
         val instanceId = RandomStringUtils.randomAlphanumeric(16).toLowerCase()
         val adminUsername = "cordaAdmin-${RandomStringUtils.randomAlphanumeric(16).toLowerCase()}"
         val adminPassword = RandomStringUtils.randomGraph(16)
         val databaseName = "cordaSQL-$instanceId"
+        println("creating dedicated sql server for database: $databaseName with profile: $profile")
         val server = azure.sqlServers().define("corda-node-db-${instanceId}")
             .withRegion(resourceGroup.region())
             .withExistingResourceGroup(resourceGroup)
@@ -28,24 +38,114 @@ class SqlServerCreator(
             .withSubnet(clusterNetwork.createdNetwork.id(), clusterNetwork.nodeSubnetName)
             .attach()
             .defineDatabase(databaseName)
-            .withStandardEdition(SqlDatabaseStandardServiceObjective.S2)
+            .withEdition(profile.edition)
+            .withServiceObjective(profile.serviceObjective)
             .attach()
-            .create()
+            .createSuspending()
 
         return DatabaseAndCredentials(
             sqlServer = server,
             adminUsername = adminUsername,
             adminPassword = adminPassword,
-            databaseName = databaseName
+            databaseName = databaseName,
+            maxConnections = profile.maxConnections
+        )
+    }
+
+    suspend fun createPooledSQLServerDBForCorda(
+        clusterNetwork: ClusterNetwork,
+        poolProfile: SqlElasticPoolProfile = SqlElasticPoolProfile.STANDARD_100
+    ): DatabaseAndCredentials {
+        val sharedServer = getOrCreateSharedServer(clusterNetwork, poolProfile)
+        val server = azure.sqlServers().getByResourceGroup(resourceGroup.name(), sharedServer.serverName)
+            ?: throw IllegalStateException("shared sql server ${sharedServer.serverName} no longer exists")
+        val databaseName = "cordaSQL-${RandomStringUtils.randomAlphanumeric(16).toLowerCase()}"
+        println("creating database: $databaseName in elastic pool: ${sharedServer.elasticPoolName}")
+        server.databases()
+            .define(databaseName)
+            .withExistingElasticPool(sharedServer.elasticPoolName)
+            .createSuspending()
+
+        return DatabaseAndCredentials(
+            sqlServer = server,
+            adminUsername = sharedServer.adminUsername,
+            adminPassword = sharedServer.adminPassword,
+            databaseName = databaseName,
+            maxConnections = poolProfile.maxConnectionsPerDatabase
         )
     }
+
+    private suspend fun getOrCreateSharedServer(
+        clusterNetwork: ClusterNetwork,
+        poolProfile: SqlElasticPoolProfile
+    ): SharedSqlServerCredentials = sharedServerLock.withLock {
+        sharedServer?.let { return it }
+
+        val instanceId = RandomStringUtils.randomAlphanumeric(16).toLowerCase()
+        val adminUsername = "cordaAdmin-${RandomStringUtils.randomAlphanumeric(16).toLowerCase()}"
+        val adminPassword = RandomStringUtils.randomGraph(16)
+        val elasticPoolName = "corda-pool-$instanceId"
+        println("creating shared sql server with elastic pool: $elasticPoolName and profile: $poolProfile")
+        val server = azure.sqlServers().define("corda-shared-db-${instanceId}")
+            .withRegion(resourceGroup.region())
+            .withExistingResourceGroup(resourceGroup)
+            .withAdministratorLogin(adminUsername)
+            .withAdministratorPassword(adminPassword)
+            .withoutAccessFromAzureServices()
+            .defineVirtualNetworkRule("inboundNetworkingRule")
+            .withSubnet(clusterNetwork.createdNetwork.id(), clusterNetwork.nodeSubnetName)
+            .attach()
+            .defineElasticPool(elasticPoolName)
+            .withStandardPool()
+            .withReservedDtu(poolProfile.poolEDTUs)
+            .withDatabaseDtuMax(poolProfile.databaseMaxEDTUs)
+            .withDatabaseDtuMin(SqlElasticPoolStandardMinEDTUs.eDTU_0)
+            .attach()
+            .createSuspending()
+
+        SharedSqlServerCredentials(server.name(), adminUsername, adminPassword, elasticPoolName).also {
+            this.sharedServer = it
+            onSharedServerCreated(it)
+        }
+    }
+}
+
+//maxConnections is the tier's concurrent worker limit, each open jdbc connection can hold a worker
+enum class SqlDatabaseProfile(
+    val edition: DatabaseEdition,
+    val serviceObjective: ServiceObjectiveName,
+    val maxConnections: Int
+) {
+    STANDARD_S2(DatabaseEdition.STANDARD, ServiceObjectiveName.S2, 120),
+    STANDARD_S4(DatabaseEdition.STANDARD, ServiceObjectiveName.S4, 200),
+    STANDARD_S6(DatabaseEdition.STANDARD, ServiceObjectiveName.S6, 400),
+    PREMIUM_P2(DatabaseEdition.PREMIUM, ServiceObjectiveName.P2, 400)
+}
+
+//each database may burst up to the whole pool, the worker limit is shared across the pool
+enum class SqlElasticPoolProfile(
+    val poolEDTUs: SqlElasticPoolStandardEDTUs,
+    val databaseMaxEDTUs: SqlElasticPoolStandardMaxEDTUs,
+    val maxConnectionsPerDatabase: Int
+) {
+    STANDARD_100(SqlElasticPoolStandardEDTUs.eDTU_100, SqlElasticPoolStandardMaxEDTUs.eDTU_100, 200),
+    STANDARD_200(SqlElasticPoolStandardEDTUs.eDTU_200, SqlElasticPoolStandardMaxEDTUs.eDTU_200, 400),
+    STANDARD_400(SqlElasticPoolStandardEDTUs.eDTU_400, SqlElasticPoolStandardMaxEDTUs.eDTU_400, 800)
 }
 
+data class SharedSqlServerCredentials(
+    val serverName: String,
+    val adminUsername: String,
+    val adminPassword: String,
+    val elasticPoolName: String
+)
+
 data class DatabaseAndCredentials(
     val sqlServer: SqlServer,
     val databaseName: String,
     val adminUsername: String,
-    val adminPassword: String
+    val adminPassword: String,
+    val maxConnections: Int
 ) {
     fun toNodeDbParams(): DatabaseConfigParams {
         val jdbcString = "jdbc:sqlserver://" +
@@ -55,6 +155,6 @@ data class DatabaseAndCredentials(
                 "trustServerCertificate=false;" +
                 "hostNameInCertificate=*.database.windows.net;" +
                 "loginTimeout=30"
-        return DatabaseConfigParams(jdbcString, adminUsername, adminPassword, DatabaseType.MS_SQL)
+        return DatabaseConfigParams(jdbcString, adminUsername, adminPassword, DatabaseType.MS_SQL, maxConnections)
     }
-}
\ No newline at end of file
+}
@@ -6,7 +6,9 @@ import io.kubernetes.client.openapi.ApiClient
 import io.kubernetes.client.openapi.models.V1Deployment
 import io.kubernetes.client.openapi.models.V1ServiceBuilder
 import io.kubernetes.client.openapi.models.V1ServicePortBuilder
+import net.corda.deployment.node.kubernetes.PinnedImages
 import net.corda.deployment.node.networking.ClusterNetwork
+import net.corda.deployment.node.networking.DmzIpAllocator
 import net.corda.deployment.node.storage.AzureFileShareCreator
 import net.corda.deployments.node.config.FloatConfigParams
 
@@ -15,24 +17,29 @@ class AzureFloatSetup(
     shareCreator: AzureFileShareCreator,
     val clusterNetwork: ClusterNetwork,
     val resourceGroup: ResourceGroup,
-    apiSource: () -> ApiClient
+    apiSource: () -> ApiClient,
+    images: PinnedImages,
+    poolSize: Int = 1
 ) :
-    FloatSetup(namespace, shareCreator, apiSource) {
+    FloatSetup(namespace, shareCreator, apiSource, images, poolSize) {
 
-    override fun buildExternalService(deployment: V1Deployment): ExternalFloatService {
+    private val ipAllocator = DmzIpAllocator(clusterNetwork, apiSource)
+
+    override fun buildExternalService(deployments: List<V1Deployment>): ExternalFloatService {
         val externalIp = clusterNetwork.p2pAddress
+        val deployment = deployments.first()
         val underlyingService = V1ServiceBuilder()
             .withKind("Service")
             .withApiVersion("v1")
             .withNewMetadata()
             .withNamespace(deployment.metadata?.namespace)
-            .withName(deployment.metadata?.name + "-external")
+            .withName("$FLOAT_POOL_NAME-external")
             .withAnnotations(
                 listOf(
                     "service.beta.kubernetes.io/azure-load-balancer-resource-group" to resourceGroup.name()
                 ).toMap()
             )
-            .withLabels(listOf("run" to deployment.metadata?.name).toMap())
+            .withLabels(listOf(FLOAT_POOL_LABEL to FLOAT_POOL_NAME).toMap())
             .endMetadata()
             .withNewSpec()
             .withType("LoadBalancer")
@@ -47,7 +54,7 @@ class AzureFloatSetup(
                         )
                     )
                     .withName(FLOAT_EXTERNAL_PORT_NAME).build()
-            ).withSelector(listOf("run" to deployment.metadata?.name).toMap())
+            ).withSelector(listOf(FLOAT_POOL_LABEL to FLOAT_POOL_NAME).toMap())
             .endSpec()
             .build()
 
@@ -59,8 +66,22 @@ class AzureFloatSetup(
         }
     }
 
+    //the whole pool is reserved in one allocation rather than one reservation per float
+    override fun buildInternalServices(deployments: List<V1Deployment>): List<InternalFloatService> {
+        val owners = deployments.map { internalServiceOwner(it) }
+        val addresses = ipAllocator.allocate(owners)
+        return deployments.zip(owners).map { (deployment, owner) -> buildInternalService(deployment, addresses.getValue(owner)) }
+    }
+
     override fun buildInternalService(deployment: V1Deployment): InternalFloatService {
-        val internalLoadBalancerAddress = clusterNetwork.getNextAvailableDMZInternalIP()
+        return buildInternalServices(listOf(deployment)).single()
+    }
+
+    private fun internalServiceOwner(deployment: V1Deployment): String {
+        return "${deployment.metadata?.namespace}.${deployment.metadata?.name}-internal"
+    }
+
+    private fun buildInternalService(deployment: V1Deployment, internalLoadBalancerAddress: String): InternalFloatService {
         val underlyingService = V1ServiceBuilder()
             .withKind("Service")
             .withApiVersion("v1")
@@ -76,6 +97,8 @@ class AzureFloatSetup(
             .endMetadata()
             .withNewSpec()
             .withType("LoadBalancer")
+            //the bridge must reach standby floats to activate them
+            .withPublishNotReadyAddresses(true)
             .withLoadBalancerIP(internalLoadBalancerAddress)
             .withPorts(
                 V1ServicePortBuilder().withPort(FloatConfigParams.FLOAT_INTERNAL_PORT)
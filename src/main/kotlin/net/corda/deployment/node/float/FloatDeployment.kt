@@ -3,21 +3,31 @@ package net.corda.deployment.node.float
 import io.kubernetes.client.custom.IntOrString
 import io.kubernetes.client.custom.Quantity
 import io.kubernetes.client.openapi.models.*
+import net.corda.deployment.node.FIREWALL_IMAGE
 import net.corda.deployment.node.FirewallTunnelSecrets
 import net.corda.deployment.node.azureFileMount
+import net.corda.deployment.node.configMapVolume
+import net.corda.deployment.node.kubernetes.ConfigMapFile
+import net.corda.deployment.node.kubernetes.PinnedImages
+import net.corda.deployment.node.kubernetes.WorkloadPlacement
+import net.corda.deployment.node.kubernetes.podAffinity
 import net.corda.deployment.node.secretEnvVar
 import net.corda.deployment.node.storage.AzureFilesDirectory
 import net.corda.deployments.node.config.FloatConfigParams
 
 internal const val FLOAT_EXTERNAL_PORT_NAME = "external-port"
 internal const val FLOAT_INTERNAL_PORT_NAME = "internal-port"
+internal const val FLOAT_POOL_LABEL = "float-pool"
+internal const val FLOAT_POOL_NAME = "float"
 
 
 fun createFloatDeployment(
     namespace: String,
-    floatConfigShare: AzureFilesDirectory,
+    name: String,
+    floatConfigFile: ConfigMapFile,
     tunnelStoresShare: AzureFilesDirectory,
-    firewallTunnelSecrets: FirewallTunnelSecrets
+    firewallTunnelSecrets: FirewallTunnelSecrets,
+    images: PinnedImages
 ): V1Deployment {
     val configDirMountName = "config-dir"
     val tunnelStoresMountName = "tunnel-stores-dir"
@@ -26,23 +36,27 @@ fun createFloatDeployment(
         .withApiVersion("apps/v1")
         .withNewMetadata()
         .withNamespace(namespace)
-        .withName("float")
-        .withLabels(listOf("dmz" to "true").toMap())
+        .withName(name)
+        .withLabels(listOf("dmz" to "true", FLOAT_POOL_LABEL to FLOAT_POOL_NAME).toMap())
         .endMetadata()
         .withNewSpec()
         .withNewSelector()
-        .withMatchLabels(listOf("run" to "float").toMap())
+        .withMatchLabels(listOf("run" to name).toMap())
         .endSelector()
         .withReplicas(1)
         .withNewTemplate()
         .withNewMetadata()
-        .withLabels(listOf("run" to "float").toMap())
+        .withLabels(listOf("run" to name, FLOAT_POOL_LABEL to FLOAT_POOL_NAME).toMap())
+        .withAnnotations(floatConfigFile.podAnnotations)
         .endMetadata()
         .withNewSpec()
+        .withNodeSelector(WorkloadPlacement.FLOATS.nodeSelector)
+        .withTolerations(WorkloadPlacement.FLOATS.tolerations())
+        .withAffinity(podAffinity(spreadFrom = listOf(FLOAT_POOL_LABEL to FLOAT_POOL_NAME).toMap()))
         .addNewContainer()
         .withName("float")
-        .withImage("corda/enterprise-firewall:4.5.1")
-        .withImagePullPolicy("Always")
+        .withImage(images.pinned(FIREWALL_IMAGE))
+        .withImagePullPolicy("IfNotPresent")
         .withCommand("run-firewall")
         .withEnv(
             V1EnvVarBuilder().withName("JVM_ARGS").withValue("-Xms512M -XX:MinHeapFreeRatio=10 -XX:MaxHeapFreeRatio=30 -XX:GCTimeRatio=4 -XX:AdaptiveSizePolicyWeight=80").build(),
@@ -71,7 +85,25 @@ fun createFloatDeployment(
             V1ContainerPortBuilder().withName(FLOAT_INTERNAL_PORT_NAME).withContainerPort(
                 FloatConfigParams.FLOAT_INTERNAL_PORT
             ).build()
-        ).withNewResources()
+        )
+        //a float only binds its external port once a bridge has activated it, so standby floats drop out of the p2p service
+        .withNewReadinessProbe()
+        .withNewTcpSocket()
+        .withPort(IntOrString(FLOAT_EXTERNAL_PORT_NAME))
+        .endTcpSocket()
+        .withPeriodSeconds(5)
+        .endReadinessProbe()
+        //the tunnel port is bound from startup whether or not the float is active, so it is the one to check for liveness
+        .withNewLivenessProbe()
+        .withNewTcpSocket()
+        .withPort(IntOrString(FLOAT_INTERNAL_PORT_NAME))
+        .endTcpSocket()
+        .withInitialDelaySeconds(60)
+        .withPeriodSeconds(20)
+        .withTimeoutSeconds(5)
+        .withFailureThreshold(3)
+        .endLivenessProbe()
+        .withNewResources()
         .withRequests(
             listOf(
                 "memory" to Quantity("1024Mi"), "cpu" to Quantity(
@@ -93,11 +125,7 @@ fun createFloatDeployment(
         .endContainer()
         .withVolumes(
             listOfNotNull(
-                azureFileMount(
-                    configDirMountName,
-                    floatConfigShare,
-                    true
-                ),
+                configMapVolume(configDirMountName, floatConfigFile),
                 azureFileMount(
                     tunnelStoresMountName,
                     tunnelStoresShare,
@@ -118,17 +146,22 @@ fun createFloatDeployment(
         .build()
 }
 
-fun createIntraClusterInternalFloatService(floatDeployment: V1Deployment, id: String): V1Service {
+fun createIntraClusterInternalFloatService(
+    floatDeployment: V1Deployment,
+    id: String,
+    selector: Map<String, String?> = listOf("run" to floatDeployment.metadata?.name).toMap()
+): V1Service {
     return V1ServiceBuilder()
         .withKind("Service")
         .withApiVersion("v1")
         .withNewMetadata()
         .withNamespace(floatDeployment.metadata?.namespace)
-        .withName(floatDeployment.metadata?.name + id)
+        .withName(floatDeployment.metadata?.name + "-" + id)
         .withLabels(listOf("run" to floatDeployment.metadata?.name).toMap())
         .endMetadata()
         .withNewSpec()
         .withType("ClusterIP")
+        .withPublishNotReadyAddresses(id == "internal")
         .withPorts(
             V1ServicePortBuilder().withPort(FloatConfigParams.FLOAT_INTERNAL_PORT)
                 .withProtocol("TCP")
@@ -139,7 +172,7 @@ fun createIntraClusterInternalFloatService(floatDeployment: V1Deployment, id: St
                     )
                 )
                 .withName(FLOAT_INTERNAL_PORT_NAME).build()
-        ).withSelector(listOf("run" to floatDeployment.metadata?.name).toMap())
+        ).withSelector(selector)
         .endSpec()
         .build()
 }
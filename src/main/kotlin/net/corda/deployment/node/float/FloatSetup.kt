@@ -5,10 +5,12 @@ import io.kubernetes.client.openapi.models.V1Deployment
 import io.kubernetes.client.openapi.models.V1Service
 import net.corda.deployment.node.*
 import net.corda.deployment.node.config.ConfigGenerators
+import net.corda.deployment.node.kubernetes.ConfigMapCreator
+import net.corda.deployment.node.kubernetes.ConfigMapFile
+import net.corda.deployment.node.kubernetes.PinnedImages
 import net.corda.deployment.node.kubernetes.simpleApply
 import net.corda.deployment.node.storage.AzureFileShareCreator
 import net.corda.deployment.node.storage.AzureFilesDirectory
-import net.corda.deployment.node.storage.uploadFromByteArray
 import net.corda.deployments.node.config.BridgeConfigParams
 import net.corda.deployments.node.config.FloatConfigParams
 import net.corda.deployments.node.config.TunnelConfigParams
@@ -16,13 +18,21 @@ import net.corda.deployments.node.config.TunnelConfigParams
 open class FloatSetup(
     val namespace: String,
     val shareCreator: AzureFileShareCreator,
-    val apiSource: () -> ApiClient
+    val apiSource: () -> ApiClient,
+    val images: PinnedImages,
+    val poolSize: Int = 1
 ) {
 
+    init {
+        if (poolSize < 1) {
+            throw IllegalArgumentException("float pool must contain at least one float")
+        }
+    }
+
 
     private lateinit var deployment: FloatDeployment
     private lateinit var tunnelSecrets: FirewallTunnelSecrets
-    private lateinit var configShare: AzureFilesDirectory
+    private lateinit var configFile: ConfigMapFile
     private lateinit var config: String
     private lateinit var tunnelComponents: FloatTunnelComponents
 
@@ -65,30 +75,42 @@ open class FloatSetup(
     }
 
     fun uploadConfig() {
-        val configDir = shareCreator.createDirectoryFor("float-config", apiSource)
-        configDir.modernClient.rootDirectoryClient.getFileClient(FloatConfigParams.FLOAT_CONFIG_FILENAME)
-            .uploadFromByteArray(config.toByteArray(Charsets.UTF_8))
-        this.configShare = configDir
+        this.configFile = ConfigMapCreator.createConfigFile(
+            "float-config",
+            FloatConfigParams.FLOAT_CONFIG_FILENAME,
+            config,
+            namespace,
+            apiSource
+        )
     }
 
     fun deploy(api: () -> ApiClient): FloatDeployment {
-        val floatDeployment = createFloatDeployment(
-            namespace,
-            configShare,
-            tunnelComponents.tunnelShare,
-            tunnelSecrets
-        )
-        val internalService = buildInternalService(floatDeployment)
-        val externalService = buildExternalService(floatDeployment)
-        simpleApply.create(floatDeployment, namespace, api)
-        simpleApply.create(internalService.underlyingService, namespace, api)
+        val floatDeployments = (0 until poolSize).map { floatId ->
+            createFloatDeployment(
+                namespace,
+                "$FLOAT_POOL_NAME-$floatId",
+                configFile,
+                tunnelComponents.tunnelShare,
+                tunnelSecrets,
+                images
+            )
+        }
+        //each float is addressed individually by the bridge, but all of them sit behind the single p2p entry point
+        val internalServices = buildInternalServices(floatDeployments)
+        val externalService = buildExternalService(floatDeployments)
+        floatDeployments.forEach { simpleApply.create(it, namespace, api) }
+        internalServices.forEach { simpleApply.create(it.underlyingService, namespace, api) }
         simpleApply.create(externalService.underlyingService, namespace, api)
 
-        return FloatDeployment(floatDeployment, internalService, externalService).also {
+        return FloatDeployment(floatDeployments, internalServices, externalService).also {
             this.deployment = it
         }
     }
 
+    open fun buildInternalServices(deployments: List<V1Deployment>): List<InternalFloatService> {
+        return deployments.map { buildInternalService(it) }
+    }
+
     open fun buildInternalService(deployment: V1Deployment): InternalFloatService {
         val underlyingService = createIntraClusterInternalFloatService(deployment, "internal")
         return object : InternalFloatService(underlyingService) {
@@ -98,8 +120,12 @@ open class FloatSetup(
         }
     }
 
-    open fun buildExternalService(deployment: V1Deployment): ExternalFloatService {
-        val underlyingService = createIntraClusterInternalFloatService(deployment, "external")
+    open fun buildExternalService(deployments: List<V1Deployment>): ExternalFloatService {
+        val underlyingService = createIntraClusterInternalFloatService(
+            deployments.first(),
+            "external",
+            listOf(FLOAT_POOL_LABEL to FLOAT_POOL_NAME).toMap()
+        )
         return object : ExternalFloatService(underlyingService) {
             override fun getP2PAddress(): String {
                 return underlyingService.metadata?.name ?: throw IllegalStateException("external float service name not available")
@@ -116,10 +142,14 @@ open class FloatSetup(
 class FloatTunnelComponents(val tunnelShare: AzureFilesDirectory)
 
 class FloatDeployment(
-    val deployment: V1Deployment,
-    val internalService: InternalFloatService,
+    val deployments: List<V1Deployment>,
+    val internalServices: List<InternalFloatService>,
     val externalService: ExternalFloatService? = null
-)
+) {
+    fun internalAddresses(): List<String> {
+        return internalServices.map { it.getInternalAddress() }
+    }
+}
 
 abstract class InternalFloatService(val underlyingService: V1Service) {
     abstract fun getInternalAddress(): String
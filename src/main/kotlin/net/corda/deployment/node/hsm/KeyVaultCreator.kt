@@ -6,6 +6,9 @@ import com.microsoft.azure.management.graphrbac.RoleAssignment
 import com.microsoft.azure.management.graphrbac.ServicePrincipal
 import com.microsoft.azure.management.keyvault.*
 import com.microsoft.azure.management.resources.ResourceGroup
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
+import net.corda.deployment.node.createSuspending
 import net.corda.deployment.node.networking.ClusterNetwork
 import net.corda.deployment.node.principals.PrincipalAndCredentials
 import java.util.*
@@ -16,30 +19,33 @@ class KeyVaultCreator(
     private val nodeId: String,
     private val clusterNetwork: ClusterNetwork
 ) {
-    fun createKeyVaultAndConfigureServicePrincipalAccess(
+    suspend fun createKeyVaultAndConfigureServicePrincipalAccess(
         servicePrincipal: PrincipalAndCredentials
     ): Vault {
+        return createKeyVault().also { configureServicePrincipalAccessToKeyVault(servicePrincipal.servicePrincipal, it) }
+    }
 
-        val discoveredVnet = azure.networks().getById(clusterNetwork.createdNetwork.id())
+    //the vault does not depend on the principal, so it can be created while the principal is still being provisioned
+    suspend fun createKeyVault(): Vault {
+        val discoveredVnet = withContext(Dispatchers.IO) { azure.networks().getById(clusterNetwork.createdNetwork.id()) }
         val nodeSubnet = discoveredVnet.subnets()[clusterNetwork.nodeSubnetName]?.inner()
             ?: throw IllegalStateException("node internal subnet not available")
-        val kv = azure.vaults()
+        return azure.vaults()
             .define("cordaVault-${nodeId}")
             .withRegion(resourceGroup.region()).withExistingResourceGroup(resourceGroup)
             .withEmptyAccessPolicy()
             .withAccessFromSelectedNetworks()
             .withVirtualNetworkRules(listOf(VirtualNetworkRule().withId(nodeSubnet.id())))
-            .create()
-        return kv.also { configureServicePrincipalAccessToKeyVault(servicePrincipal.servicePrincipal, it) }
+            .createSuspending()
     }
 
-    private fun configureServicePrincipalAccessToKeyVault(
+    suspend fun configureServicePrincipalAccessToKeyVault(
         sp: ServicePrincipal,
         kv: Vault
     ): RoleAssignment {
         val createdRole = azure.accessManagement().roleAssignments().define(UUID.randomUUID().toString())
             .forServicePrincipal(sp).withBuiltInRole(BuiltInRole.CONTRIBUTOR)
-            .withResourceScope(kv).create()
+            .withResourceScope(kv).createSuspending()
 
         val certPermissions = listOf(
             CertificatePermissions.GET,
@@ -94,11 +100,13 @@ class KeyVaultCreator(
             .withTenantId(UUID.fromString(kv.tenantId()))
 
 
-        kv.manager().inner().vaults().updateAccessPolicy(
-            kv.resourceGroupName(), kv.name(), AccessPolicyUpdateKind.ADD, VaultAccessPolicyProperties().withAccessPolicies(
-                listOf(accessPolicyEntry)
+        withContext(Dispatchers.IO) {
+            kv.manager().inner().vaults().updateAccessPolicy(
+                kv.resourceGroupName(), kv.name(), AccessPolicyUpdateKind.ADD, VaultAccessPolicyProperties().withAccessPolicies(
+                    listOf(accessPolicyEntry)
+                )
             )
-        )
+        }
         return createdRole
     }
 }
\ No newline at end of file
@@ -5,36 +5,56 @@ import com.microsoft.azure.management.resources.ResourceGroup
 import io.kubernetes.client.openapi.JSON
 import io.kubernetes.client.openapi.apis.CoreV1Api
 import io.kubernetes.client.openapi.models.V1NamespaceBuilder
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.coroutineScope
 import net.corda.deployment.node.*
+import net.corda.deployment.node.database.DatabaseBackend
+import net.corda.deployment.node.database.DatabaseConfigParams
+import net.corda.deployment.node.database.PostgresServerCreator
+import net.corda.deployment.node.database.SharedSqlServerCredentials
 import net.corda.deployment.node.database.SqlServerCreator
 import net.corda.deployment.node.float.AzureFloatSetup
 import net.corda.deployment.node.float.FloatSetup
 import net.corda.deployment.node.hsm.KeyVaultCreator
 import net.corda.deployment.node.kubernetes.Clusters
+import net.corda.deployment.node.kubernetes.ImagePrePuller
 import net.corda.deployment.node.kubernetes.KubernetesClusterCreator
 import net.corda.deployment.node.kubernetes.PersistableClusters
+import net.corda.deployment.node.kubernetes.PinnedImages
 import net.corda.deployment.node.kubernetes.allowAllFailures
+import net.corda.deployment.node.networking.ClusterNetworkPlan
 import net.corda.deployment.node.networking.NetworkCreator
 import net.corda.deployment.node.networking.PublicIpCreator
 import net.corda.deployment.node.principals.ServicePrincipalCreator
 import net.corda.deployment.node.storage.AzureFileShareCreator
 import net.corda.deployment.node.storage.AzureFilesDirectory
+import net.corda.deployment.node.storage.AzureFilesVolumeDriver
 import net.corda.deployment.node.storage.PersistableAzureFileShareCreator
 import net.corda.deployment.node.storage.PersistableShare
+import net.corda.deployment.node.storage.ShareMountOptions
+import net.corda.deployment.node.storage.ShareVolumes
+import net.corda.deployment.node.storage.StorageTier
 import java.io.File
 import java.io.FileWriter
 
+private const val ARTEMIS_SHARE_SUFFIX = "artemisfiles"
 
 class AzureInfrastructureDeployer(
     val mngAzure: Azure,
     val resourceGroup: ResourceGroup
 ) {
 
-    fun setupInfrastructure(fileToPersistTo: File): AzureInfrastructure {
+    suspend fun setupInfrastructure(
+        fileToPersistTo: File,
+        networkPlan: ClusterNetworkPlan = ClusterNetworkPlan()
+    ): AzureInfrastructure {
 
         val persistableInfrastructure =
             JSON().deserialize<PersistableInfrastructure>(fileToPersistTo.readText(Charsets.UTF_8), PersistableInfrastructure::class.java)
         if (persistableInfrastructure.clusters == null) {
+            networkPlan.validate()
             //we must delete and wait for the resource group to be destroyed
             val networkCreator = NetworkCreator(azure = mngAzure, resourceGroup = resourceGroup)
             val servicePrincipalCreator = ServicePrincipalCreator(
@@ -43,14 +63,18 @@ class AzureInfrastructureDeployer(
             )
             val clusterCreator = KubernetesClusterCreator(azure = mngAzure, resourceGroup = resourceGroup)
             val ipCreator = PublicIpCreator(azure = mngAzure, resourceGroup = resourceGroup)
-            val clusterServicePrincipal = servicePrincipalCreator.createServicePrincipalAndCredentials("cluster", true)
-            val publicIpForAzureRpc = ipCreator.createPublicIp("rpc")
-            val publicIpForAzureP2p = ipCreator.createPublicIp("p2p")
-            val networkForClusters = networkCreator.createNetworkForClusters(publicIpForAzureRpc, publicIpForAzureP2p)
-            val clusters = clusterCreator.createClusters(
-                servicePrincipal = clusterServicePrincipal,
-                network = networkForClusters
-            )
+            val clusters = coroutineScope {
+                val clusterServicePrincipal = async { servicePrincipalCreator.createServicePrincipalAndCredentials("cluster", true) }
+                val publicIpForAzureRpc = async { ipCreator.createPublicIp("rpc") }
+                val publicIpForAzureP2p = async { ipCreator.createPublicIp("p2p") }
+                val networkForClusters = async { networkCreator.createNetworkForClusters(publicIpForAzureRpc, publicIpForAzureP2p, networkPlan) }
+                //clusters only need the principal and the network, so start them as soon as both are ready
+                clusterCreator.createClusters(
+                    servicePrincipal = clusterServicePrincipal.await(),
+                    network = networkForClusters.await(),
+                    networkPlan = networkPlan
+                )
+            }
             return AzureInfrastructure(clusters, mngAzure, resourceGroup, fileToPersistTo)
         } else {
             return AzureInfrastructure.fromPersistable(persistableInfrastructure, mngAzure, fileToPersistTo)
@@ -72,15 +96,32 @@ class AzureInfrastructureDeployer(
         private var artemisConfigured: Boolean = false
         private var artemisStoresGenerated: Boolean = false
         private var artemisSecrets: ArtemisSecrets? = null
+        private var sharedSqlServer: SharedSqlServerCredentials? = null
+
+        //set once the pre-pull completes, every workload this infrastructure builds references these digests
+        internal open var pinnedImages: PinnedImages = PinnedImages.UNPINNED
+
+        internal open val sqlServerCreator: SqlServerCreator by lazy {
+            SqlServerCreator(azure, resourceGroup, sharedSqlServer) { createdServer ->
+                this.sharedSqlServer = createdServer
+                persist()
+            }
+        }
 
         private val internalShareCreators: MutableMap<String, AzureFileShareCreator> = mutableMapOf()
         private val dmzShareCreators: MutableMap<String, AzureFileShareCreator> = mutableMapOf()
 
-        fun internalShareCreator(namespace: String, uniqueId: String = namespace): AzureFileShareCreator {
+        //a premium creator needs its own account, file storage accounts cannot hold standard shares
+        fun internalShareCreator(
+            namespace: String,
+            uniqueId: String = namespace,
+            storageTier: StorageTier = StorageTier.STANDARD
+        ): AzureFileShareCreator {
             return synchronized(internalShareCreators) {
-                val key = "internal-$namespace-$uniqueId"
+                val tierSuffix = if (storageTier == StorageTier.PREMIUM) "premium" else ""
+                val key = "internal-$namespace-$uniqueId$tierSuffix"
                 internalShareCreators.computeIfAbsent(key) {
-                    AzureFileShareCreator(key, azure, resourceGroup, namespace, uniqueId)
+                    AzureFileShareCreator(key, azure, resourceGroup, namespace, "$uniqueId$tierSuffix", storageTier = storageTier)
                 }
             }
         }
@@ -94,8 +135,25 @@ class AzureInfrastructureDeployer(
             }
         }
 
-        fun floatSetup(namespace: String): FloatSetup {
-            return AzureFloatSetup(namespace, dmzShareCreator(namespace), clusters.clusterNetwork, resourceGroup, clusters.dmzApiSource())
+        fun floatSetup(namespace: String, poolSize: Int = 1): FloatSetup {
+            return AzureFloatSetup(
+                namespace, dmzShareCreator(namespace), clusters.clusterNetwork, resourceGroup, clusters.dmzApiSource(), pinnedImages, poolSize
+            )
+        }
+
+        //workloads are built against the digests the pulls resolve, so this must complete before anything is deployed
+        suspend fun prePullImages(nodeImages: List<String> = emptyList()): PinnedImages = coroutineScope {
+            val pullers = listOf(
+                ImagePrePuller(
+                    (listOf(SETUP_IMAGE, FIREWALL_IMAGE, NODE_IMAGE, ZOOKEEPER_IMAGE, PGBOUNCER_IMAGE) + nodeImages).distinct()
+                ) to clusters.nonDmzApiSource(),
+                ImagePrePuller(listOf(SETUP_IMAGE, FIREWALL_IMAGE)) to clusters.dmzApiSource()
+            )
+            pullers.forEach { (puller, api) -> puller.deploy(api) }
+            pullers.map { (puller, api) -> async(Dispatchers.IO) { puller.awaitPulled(api) } }
+                .awaitAll()
+                .reduce { pinned, other -> pinned + other }
+                .also { pinnedImages = it }
         }
 
         fun p2pAddress(): String {
@@ -124,12 +182,12 @@ class AzureInfrastructureDeployer(
         }
 
         suspend fun setupArtemis(namespace: String): DeployedArtemis {
-            if (this.artemisDeployment != null) {
+            if (this.artemisDeployment != null && this.artemisSecrets != null) {
                 return DeployedArtemis(
-                    this.artemisDeployment!!, this.artemisDirectories!!
+                    this.artemisDeployment!!, this.artemisDirectories!!, this.artemisSecrets!!
                 )
             }
-            val artemisSetup = ArtemisSetup(azure, resourceGroup, namespace, clusters.nonDmzApiSource())
+            val artemisSetup = ArtemisSetup(azure, resourceGroup, namespace, clusters.nonDmzApiSource(), pinnedImages, clusters.messagingZone())
 
             if (this.artemisSecrets == null) {
                 this.artemisSecrets = artemisSetup.generateArtemisSecrets()
@@ -170,20 +228,20 @@ class AzureInfrastructureDeployer(
                 persist()
             }
 
-            return DeployedArtemis(this.artemisDeployment!!, this.artemisDirectories!!)
+            return DeployedArtemis(this.artemisDeployment!!, this.artemisDirectories!!, this.artemisSecrets!!)
 
         }
 
         fun nodeSpecificInfrastructure(id: String): NodeAzureInfrastructure {
-            return NodeAzureInfrastructure(clusters, azure, resourceGroup, id, fileToPersistTo)
+            return NodeAzureInfrastructure(clusters, azure, resourceGroup, id, fileToPersistTo, sqlServerCreator, pinnedImages)
         }
 
         fun firewallSetup(namespace: String): FirewallSetup {
-            return FirewallSetup(namespace, internalShareCreator(namespace))
+            return FirewallSetup(namespace, internalShareCreator(namespace), pinnedImages)
         }
 
-        fun bridgeSetup(namespace: String): BridgeSetup {
-            return BridgeSetup(internalShareCreator(namespace), namespace, clusters.nonDmzApiSource())
+        fun bridgeSetup(namespace: String, haMode: BridgeHaMode = BridgeHaMode.Standalone): BridgeSetup {
+            return BridgeSetup(internalShareCreator(namespace), namespace, clusters.nonDmzApiSource(), pinnedImages, haMode)
         }
 
         fun toPersistable(): PersistableInfrastructure {
@@ -209,7 +267,8 @@ class AzureInfrastructureDeployer(
                 artemisBrokerDir = artemisDirectories?.artemisBrokerDir?.toPersistable(),
                 artemisStoresGenerated = artemisStoresGenerated,
                 artemisBrokerConfigured = artemisConfigured,
-                artemisDeployment = artemisDeployment
+                artemisDeployment = artemisDeployment,
+                sharedSqlServer = sharedSqlServer
             )
 
         }
@@ -227,6 +286,10 @@ class AzureInfrastructureDeployer(
             this.artemisSecrets = artemisSecrets
         }
 
+        fun registerSharedSqlServer(sharedSqlServer: SharedSqlServerCredentials) {
+            this.sharedSqlServer = sharedSqlServer
+        }
+
         private fun persist(
         ) {
             val dumps = JSON().serialize(this.toPersistable())
@@ -249,7 +312,7 @@ class AzureInfrastructureDeployer(
 
         fun createArtemisDirectories(namespace: String): ArtemisDirectories {
             if (this.artemisDirectories == null) {
-                val artemisShareCreator = this.internalShareCreator(namespace, "artemisfiles")
+                val artemisShareCreator = this.internalShareCreator(namespace, ARTEMIS_SHARE_SUFFIX)
                 val nodeArtemisShare = artemisShareCreator.createDirectoryFor("node-artemis-files", this.clusters.nonDmzApiSource())
                 val bridgeArtemisShare = artemisShareCreator.createDirectoryFor("bridge-artemis-files", this.clusters.nonDmzApiSource())
                 val artemisStoresShare = artemisShareCreator.createDirectoryFor("artemis-files", this.clusters.nonDmzApiSource())
@@ -299,10 +362,18 @@ class AzureInfrastructureDeployer(
                     infra.registerDmzCreators(dmzCreatorsToRegister)
                     infra.registerInternalCreators(internalCreatorsToRegister)
                     p.artemisSecrets?.let { infra.registerArtemisSecrets(it) }
-                    p.artemisDirShare?.let { AzureFilesDirectory.fromPersistable(it, mgmAzure) }?.let { artemisShare ->
-                        p.bridgeArtemisDirShare?.let { AzureFilesDirectory.fromPersistable(it, mgmAzure) }?.let { bridgeArtemisShare ->
-                            p.nodeArtemisDirShare?.let { AzureFilesDirectory.fromPersistable(it, mgmAzure) }?.let { nodeArtemisShare ->
-                                p.artemisBrokerDir?.let { AzureFilesDirectory.fromPersistable(it, mgmAzure) }?.let { brokerDir ->
+                    p.sharedSqlServer?.let { infra.registerSharedSqlServer(it) }
+                    //shares persisted before their volumes were recorded were all created by the artemis share creator
+                    val artemisVolumes = p.internalShareCreators.firstOrNull { it.instanceSpecificSuffix == ARTEMIS_SHARE_SUFFIX }?.let {
+                        ShareVolumes(it.namespace, it.volumeDriver ?: AzureFilesVolumeDriver.IN_TREE, ShareMountOptions.DEFAULT)
+                    }
+                    val restoreShare = { share: PersistableShare ->
+                        AzureFilesDirectory.fromPersistable(share, mgmAzure, clusters.nonDmzApiSource(), artemisVolumes)
+                    }
+                    p.artemisDirShare?.let(restoreShare)?.let { artemisShare ->
+                        p.bridgeArtemisDirShare?.let(restoreShare)?.let { bridgeArtemisShare ->
+                            p.nodeArtemisDirShare?.let(restoreShare)?.let { nodeArtemisShare ->
+                                p.artemisBrokerDir?.let(restoreShare)?.let { brokerDir ->
                                     infra.artemisDirectories = ArtemisDirectories(
                                         nodeArtemisShare = nodeArtemisShare,
                                         bridgeArtemisShare = bridgeArtemisShare,
@@ -334,7 +405,10 @@ data class ArtemisDirectories(
     val artemisBrokerDir: AzureFilesDirectory
 )
 
-data class DeployedArtemis(val deployment: ArtemisDeployment, val directories: ArtemisDirectories)
+data class DeployedArtemis(val deployment: ArtemisDeployment, val directories: ArtemisDirectories, val secrets: ArtemisSecrets) {
+    val nodeStores: GeneratedArtemisStores
+        get() = GeneratedArtemisStores(directories.nodeArtemisShare)
+}
 
 data class PersistableInfrastructure(
     val clusters: PersistableClusters?,
@@ -348,7 +422,8 @@ data class PersistableInfrastructure(
     val artemisStoresGenerated: Boolean,
     val artemisBrokerDir: PersistableShare?,
     val artemisBrokerConfigured: Boolean,
-    val artemisDeployment: ArtemisDeployment?
+    val artemisDeployment: ArtemisDeployment?,
+    val sharedSqlServer: SharedSqlServerCredentials? = null
 )
 
 class NodeAzureInfrastructure(
@@ -356,32 +431,88 @@ class NodeAzureInfrastructure(
     azure: Azure,
     resourceGroup: ResourceGroup,
     val nodeId: String,
-    fileToPersistTo: File
+    fileToPersistTo: File,
+    //shared with the parent infrastructure so that pooled databases land on the same server
+    override val sqlServerCreator: SqlServerCreator,
+    override var pinnedImages: PinnedImages
 ) : AzureInfrastructureDeployer.AzureInfrastructure(clusters, azure, resourceGroup, fileToPersistTo) {
-    val dbCreator = SqlServerCreator(azure = azure, resourceGroup = resourceGroup)
 
-    fun nodeSetup(namespace: String): NodeSetup {
-        val database = dbCreator.createSQLServerDBForCorda(clusters.clusterNetwork)
+    //none of the per node azure resources depend on each other, so they are all provisioned at once
+    suspend fun provisionNode(
+        namespace: String,
+        resources: NodeResourceProfile = NodeResourceProfile.SMALL,
+        databaseBackend: DatabaseBackend = DatabaseBackend.DedicatedSqlServer(),
+        jarStaging: JarStaging = JarStaging.Local(),
+        logging: NodeLogging = NodeLogging()
+    ): ProvisionedNode = coroutineScope {
+        val shareCreator = internalShareCreator(namespace)
+        val storageAccount = async { shareCreator.provisionStorageAccount() }
+        val dbParams = async { createNodeDatabase(databaseBackend) }
+        val keyVaultSetup = async { keyVaultSetup(namespace) }
+        storageAccount.await()
+        ProvisionedNode(createNodeSetup(namespace, resources, dbParams.await(), jarStaging, logging), keyVaultSetup.await())
+    }
+
+    suspend fun nodeSetup(
+        namespace: String,
+        resources: NodeResourceProfile = NodeResourceProfile.SMALL,
+        databaseBackend: DatabaseBackend = DatabaseBackend.DedicatedSqlServer(),
+        jarStaging: JarStaging = JarStaging.Local(),
+        logging: NodeLogging = NodeLogging()
+    ): NodeSetup {
+        return createNodeSetup(namespace, resources, createNodeDatabase(databaseBackend), jarStaging, logging)
+    }
+
+    private suspend fun createNodeDatabase(databaseBackend: DatabaseBackend): DatabaseConfigParams {
+        return when (databaseBackend) {
+            is DatabaseBackend.DedicatedSqlServer -> sqlServerCreator.createSQLServerDBForCorda(
+                clusters.clusterNetwork,
+                databaseBackend.profile
+            ).toNodeDbParams()
+            is DatabaseBackend.SqlElasticPool -> sqlServerCreator.createPooledSQLServerDBForCorda(
+                clusters.clusterNetwork,
+                databaseBackend.poolProfile
+            ).toNodeDbParams()
+            is DatabaseBackend.Postgres -> PostgresServerCreator(azure, resourceGroup).createPostgresDBForCorda(
+                clusters.clusterNetwork,
+                databaseBackend.profile
+            ).toNodeDbParams(databaseBackend.withConnectionPooler)
+        }
+    }
+
+    private fun createNodeSetup(
+        namespace: String,
+        resources: NodeResourceProfile,
+        dbParams: DatabaseConfigParams,
+        jarStaging: JarStaging,
+        logging: NodeLogging
+    ): NodeSetup {
         return NodeSetup(
             internalShareCreator(namespace),
-            database.toNodeDbParams(),
+            dbParams,
             namespace,
             clusters.nonDmzApiSource(),
             nodeId,
-            HsmType.AZURE
+            HsmType.AZURE,
+            pinnedImages,
+            resources,
+            jarStaging = jarStaging,
+            logging = logging
         )
     }
 
-    fun keyVaultSetup(namespace: String): KeyVaultSetup {
+    suspend fun keyVaultSetup(namespace: String): KeyVaultSetup = coroutineScope {
         val servicePrincipalCreator =
             ServicePrincipalCreator(azure = azure, resourceGroup = resourceGroup)
         val keyVaultCreator =
             KeyVaultCreator(azure = azure, resourceGroup = resourceGroup, clusterNetwork = clusters.clusterNetwork, nodeId = nodeId)
-        val keyVaultServicePrincipal =
+        val keyVaultServicePrincipal = async {
             servicePrincipalCreator.createServicePrincipalAndCredentials("vault", permissionsOnResourceGroup = false)
-        val keyVault = keyVaultCreator.createKeyVaultAndConfigureServicePrincipalAccess(keyVaultServicePrincipal)
-        val keyVaultAndCredentials = KeyVaultSetup.KeyVaultAndCredentials(keyVaultServicePrincipal, keyVault)
-        return KeyVaultSetup(
+        }
+        val keyVault = async { keyVaultCreator.createKeyVault() }
+        keyVaultCreator.configureServicePrincipalAccessToKeyVault(keyVaultServicePrincipal.await().servicePrincipal, keyVault.await())
+        val keyVaultAndCredentials = KeyVaultSetup.KeyVaultAndCredentials(keyVaultServicePrincipal.await(), keyVault.await())
+        KeyVaultSetup(
             keyVaultAndCredentials,
             resourceGroup,
             namespace,
@@ -389,4 +520,6 @@ class NodeAzureInfrastructure(
             clusters.nonDmzApiSource()
         )
     }
-}
\ No newline at end of file
+}
+
+data class ProvisionedNode(val nodeSetup: NodeSetup, val keyVaultSetup: KeyVaultSetup)
\ No newline at end of file
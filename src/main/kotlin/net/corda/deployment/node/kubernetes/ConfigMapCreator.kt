@@ -0,0 +1,62 @@
+package net.corda.deployment.node.kubernetes
+
+import io.kubernetes.client.openapi.ApiClient
+import io.kubernetes.client.openapi.ApiException
+import io.kubernetes.client.openapi.apis.CoreV1Api
+import io.kubernetes.client.openapi.models.V1ConfigMapBuilder
+import net.corda.deployment.node.kubernetes.ConfigMapCreator.Companion.CONFIG_HASH_ANNOTATION
+import java.security.MessageDigest
+
+//generated configs are a few kilobytes, so a config map replaces a dedicated file share, its storage secret and an smb mount
+class ConfigMapCreator {
+    companion object {
+        const val CONFIG_HASH_ANNOTATION = "corda.net/config-hash"
+        private const val HTTP_CONFLICT = 409
+
+        fun createConfigFile(
+            name: String,
+            fileName: String,
+            content: String,
+            namespace: String,
+            clientSource: () -> ApiClient
+        ): ConfigMapFile {
+            val coreV1Api = CoreV1Api(clientSource())
+            val configMap = V1ConfigMapBuilder()
+                .withApiVersion("v1")
+                .withKind("ConfigMap")
+                .withNewMetadata()
+                .withName(name)
+                .withNamespace(namespace)
+                .endMetadata()
+                .withData(mapOf(fileName to content))
+                .build()
+
+            try {
+                coreV1Api.createNamespacedConfigMap(namespace, configMap, null, null, null)
+            } catch (e: ApiException) {
+                if (e.code != HTTP_CONFLICT) {
+                    println(e.responseBody)
+                    throw e
+                }
+                //a regenerated config replaces the old one, the changed hash annotation then rolls the pods using it
+                coreV1Api.replaceNamespacedConfigMap(name, namespace, configMap, null, null, null)
+            }
+            return ConfigMapFile(name, fileName, sha256(content))
+        }
+
+        private fun sha256(content: String): String {
+            return MessageDigest.getInstance("SHA-256")
+                .digest(content.toByteArray(Charsets.UTF_8))
+                .joinToString("") { "%02x".format(it) }
+        }
+    }
+}
+
+data class ConfigMapFile(
+    val configMapName: String,
+    val fileName: String,
+    val contentHash: String
+) {
+    val podAnnotations: Map<String, String>
+        get() = mapOf(CONFIG_HASH_ANNOTATION to contentHash)
+}
@@ -0,0 +1,162 @@
+package net.corda.deployment.node.kubernetes
+
+import io.kubernetes.client.custom.Quantity
+import io.kubernetes.client.openapi.ApiClient
+import io.kubernetes.client.openapi.ApiException
+import io.kubernetes.client.openapi.apis.AppsV1Api
+import io.kubernetes.client.openapi.apis.CoreV1Api
+import io.kubernetes.client.openapi.models.V1ContainerBuilder
+import io.kubernetes.client.openapi.models.V1DaemonSet
+import io.kubernetes.client.openapi.models.V1DaemonSetBuilder
+import io.kubernetes.client.openapi.models.V1Toleration
+import kotlinx.coroutines.delay
+import java.time.Duration
+import java.time.Instant
+import java.util.concurrent.TimeoutException
+
+private const val PRE_PULL_NAMESPACE = "kube-system"
+private const val PRE_PULL_NAME = "corda-image-pre-pull"
+private const val PAUSE_IMAGE = "k8s.gcr.io/pause:3.1"
+private const val HTTP_CONFLICT = 409
+private const val TEMPLATE_GENERATION_ANNOTATION = "deprecated.daemonset.template.generation"
+private const val POD_TEMPLATE_GENERATION_LABEL = "pod-template-generation"
+
+//the digests a pre-pull found on the nodes, every workload is built against these so IfNotPresent can never
+//run a different build to the one already cached. an image that was not pre-pulled stays referenced by tag
+class PinnedImages(private val digests: Map<String, String> = emptyMap()) {
+
+    fun pinned(image: String): String {
+        return digests[image] ?: image
+    }
+
+    operator fun plus(other: PinnedImages): PinnedImages {
+        return PinnedImages(other.digests + digests)
+    }
+
+    companion object {
+        val UNPINNED = PinnedImages()
+    }
+}
+
+//one pod per agent node, each image is pulled by an init container that exits immediately
+class ImagePrePuller(private val images: List<String>) {
+
+    fun deploy(clientSource: () -> ApiClient): V1DaemonSet {
+        val daemonSet = V1DaemonSetBuilder()
+            .withApiVersion("apps/v1")
+            .withKind("DaemonSet")
+            .withNewMetadata()
+            .withName(PRE_PULL_NAME)
+            .withNamespace(PRE_PULL_NAMESPACE)
+            .endMetadata()
+            .withNewSpec()
+            .withNewSelector()
+            .withMatchLabels(mapOf("run" to PRE_PULL_NAME))
+            .endSelector()
+            .withNewTemplate()
+            .withNewMetadata()
+            .withLabels(mapOf("run" to PRE_PULL_NAME))
+            .endMetadata()
+            .withNewSpec()
+            //every pool is tainted for its workload, the pre-pull must land on all of them
+            .withTolerations(V1Toleration().operator("Exists"))
+            .withInitContainers(images.mapIndexed { index, image ->
+                V1ContainerBuilder()
+                    .withName("pull-$index")
+                    .withImage(image)
+                    .withImagePullPolicy("IfNotPresent")
+                    .withCommand("sh", "-c", "exit 0")
+                    .build()
+            })
+            .addNewContainer()
+            .withName("pause")
+            .withImage(PAUSE_IMAGE)
+            .withImagePullPolicy("IfNotPresent")
+            .withNewResources()
+            .withRequests(mapOf("cpu" to Quantity("1m"), "memory" to Quantity("8Mi")))
+            .endResources()
+            .endContainer()
+            .endSpec()
+            .endTemplate()
+            .endSpec()
+            .build()
+
+        val appsV1Api = AppsV1Api(clientSource())
+        try {
+            appsV1Api.createNamespacedDaemonSet(PRE_PULL_NAMESPACE, daemonSet, null, null, null)
+        } catch (e: ApiException) {
+            if (e.code != HTTP_CONFLICT) {
+                println(e.responseBody)
+                throw e
+            }
+            appsV1Api.replaceNamespacedDaemonSet(PRE_PULL_NAME, PRE_PULL_NAMESPACE, daemonSet, null, null, null)
+        }
+        return daemonSet
+    }
+
+    suspend fun awaitPulled(clientSource: () -> ApiClient, duration: Duration = Duration.ofMinutes(15)): PinnedImages {
+        val client = clientSource()
+        val appsV1Api = AppsV1Api(client)
+        val deadline = Instant.now().plus(duration)
+        while (Instant.now().isBefore(deadline)) {
+            val daemonSet = appsV1Api.readNamespacedDaemonSet(PRE_PULL_NAME, PRE_PULL_NAMESPACE, null, null, null)
+            val generation = daemonSet.metadata?.generation
+            val status = daemonSet.status
+            val desired = status?.desiredNumberScheduled ?: 0
+            //a replaced spec keeps reporting the previous generation's readiness until the controller has observed it
+            val observed = generation != null && (status?.observedGeneration ?: 0L) >= generation
+            if (observed && desired > 0 && status?.numberAvailable == desired && status.updatedNumberScheduled == desired) {
+                println("pre-pulled ${images.size} images onto $desired nodes")
+                return PinnedImages(pulledDigests(client, templateGeneration(daemonSet)))
+            }
+            delay(5000)
+        }
+        throw TimeoutException("images were not pre-pulled within $duration")
+    }
+
+    private fun templateGeneration(daemonSet: V1DaemonSet): String {
+        return daemonSet.metadata?.annotations?.get(TEMPLATE_GENERATION_ANNOTATION)
+            ?: daemonSet.metadata?.generation?.toString()
+            ?: throw IllegalStateException("pre-pull daemon set has no generation")
+    }
+
+    //every image reaches an agent node through a registry, so one without a repo digest cannot be pinned and fails the pull
+    private fun pulledDigests(client: ApiClient, templateGeneration: String): Map<String, String> {
+        val pods = CoreV1Api(client).listNamespacedPod(
+            PRE_PULL_NAMESPACE, null, null, null, null,
+            "run=$PRE_PULL_NAME,$POD_TEMPLATE_GENERATION_LABEL=$templateGeneration",
+            null, null, null, false
+        ).items
+        val statuses = pods.mapNotNull { it.status?.initContainerStatuses }.firstOrNull { it.size == images.size }
+            ?: throw IllegalStateException("no pre-pull pod of generation $templateGeneration reports the images it pulled")
+        return images.map { image ->
+            val containerStatus = statuses.firstOrNull { qualified(it.image) == qualified(image) }
+                ?: throw IllegalStateException("pre-pull pods did not report pulling $image")
+            val digest = containerStatus.imageID.substringAfter("@", "")
+            if (!digest.startsWith("sha256:")) {
+                throw IllegalStateException("$image was pulled without a registry digest (${containerStatus.imageID}), it cannot be pinned")
+            }
+            val pinned = "${repositoryOf(image)}@$digest"
+            println("pinned $image to $pinned")
+            image to pinned
+        }.toMap()
+    }
+
+    //runtimes may report an image in its fully qualified form, docker.io/library/zookeeper:3.6 for zookeeper:3.6
+    private fun qualified(image: String): String {
+        val reference = image.substringBefore("@")
+        val tagged = if (reference.lastIndexOf(':') > reference.lastIndexOf('/')) reference else "$reference:latest"
+        val firstComponent = tagged.substringBefore("/", "")
+        val hasRegistry = firstComponent.contains('.') || firstComponent.contains(':') || firstComponent == "localhost"
+        return when {
+            hasRegistry -> tagged
+            firstComponent.isEmpty() -> "docker.io/library/$tagged"
+            else -> "docker.io/$tagged"
+        }
+    }
+
+    //a colon after the last slash separates the tag, one before it belongs to a registry port
+    private fun repositoryOf(image: String): String {
+        return if (image.lastIndexOf(':') > image.lastIndexOf('/')) image.substringBeforeLast(":") else image
+    }
+}
@@ -8,28 +8,32 @@ import com.microsoft.azure.management.containerservice.implementation.Kubernetes
 import com.microsoft.azure.management.containerservice.implementation.KubernetesClusterImpl
 import com.microsoft.azure.management.network.PublicIPAddress
 import com.microsoft.azure.management.resources.ResourceGroup
-import com.microsoft.rest.ServiceCallback
 import io.kubernetes.client.openapi.ApiClient
 import io.kubernetes.client.openapi.ApiException
 import io.kubernetes.client.util.ClientBuilder
 import io.kubernetes.client.util.KubeConfig
+import kotlinx.coroutines.async
+import kotlinx.coroutines.coroutineScope
+import net.corda.deployment.node.createSuspending
 import net.corda.deployment.node.networking.ClusterNetwork
+import net.corda.deployment.node.networking.ClusterNetworkPlan
+import net.corda.deployment.node.networking.ClusterNetworkingMode
 import net.corda.deployment.node.networking.PersistableNetwork
 import net.corda.deployment.node.principals.PrincipalAndCredentials
 import org.apache.commons.lang3.RandomStringUtils
 import java.io.ByteArrayOutputStream
 import java.io.InputStreamReader
-import java.util.concurrent.CompletableFuture
 
 class KubernetesClusterCreator(
     val azure: Azure,
     val resourceGroup: ResourceGroup
 ) {
-    fun createClusters(
+    suspend fun createClusters(
         servicePrincipal: PrincipalAndCredentials,
         network: ClusterNetwork,
+        networkPlan: ClusterNetworkPlan,
         dnsSuffix: String = RandomStringUtils.randomAlphanumeric(12).toLowerCase()
-    ): Clusters {
+    ): Clusters = coroutineScope {
 
         val createdNetwork = network.createdNetwork
         val floatSubnetName = network.floatSubnetName
@@ -46,24 +50,10 @@ class KubernetesClusterCreator(
             }.toByteArray()))
             .withServicePrincipalClientId(servicePrincipal.servicePrincipal.applicationId())
             .withServicePrincipalSecret(servicePrincipal.servicePrincipalPassword)
-            .defineAgentPool("dmzpool")
-            .withVirtualMachineSize(ContainerServiceVMSizeTypes.STANDARD_B2MS)
-            .withMode(AgentPoolMode.SYSTEM)
-            .withOSType(OSType.LINUX)
-            .withAgentPoolVirtualMachineCount(1)
-            .withAgentPoolType(AgentPoolType.VIRTUAL_MACHINE_SCALE_SETS)
-            .withVirtualNetwork(createdNetwork.id(), floatSubnetName)
-            .withAutoScale(1, 10)
-            .attach()
+            .withAgentPools(networkPlan.poolProfiles.dmzPools, networkPlan.poolProfiles.topology, createdNetwork.id(), floatSubnetName)
             .withSku(ManagedClusterSKU().withName(ManagedClusterSKUName.BASIC).withTier(ManagedClusterSKUTier.PAID))
             .withDnsPrefix("corda-dmz-${dnsSuffix}")
-            .defineLoadBalancerAwareNetworkProfile()
-            .withLoadBalancerSku(LoadBalancerSku.STANDARD)
-            .withServiceCidr("10.0.0.0/16")
-            .withDnsServiceIP("10.0.0.10")
-            .withPodCidr("10.244.0.0/16")
-            .withDockerBridgeCidr("172.17.0.1/16")
-            .attach()
+            .withClusterNetworking(networkPlan.mode)
             .enableRBAC()
 
         val nodeClusterCreate = azure.kubernetesClusters()
@@ -77,54 +67,23 @@ class KubernetesClusterCreator(
             }.toByteArray()))
             .withServicePrincipalClientId(servicePrincipal.servicePrincipal.applicationId())
             .withServicePrincipalSecret(servicePrincipal.servicePrincipalPassword)
-            .defineAgentPool("nondmzpool")
-            .withVirtualMachineSize(ContainerServiceVMSizeTypes.STANDARD_B4MS)
-            .withMode(AgentPoolMode.SYSTEM)
-            .withOSType(OSType.LINUX)
-            .withAgentPoolVirtualMachineCount(1)
-            .withAgentPoolType(AgentPoolType.VIRTUAL_MACHINE_SCALE_SETS)
-            .withVirtualNetwork(createdNetwork.id(), nodeSubnetName)
-            .withAutoScale(1, 10)
-            .attach()
+            .withAgentPools(networkPlan.poolProfiles.internalPools, networkPlan.poolProfiles.topology, createdNetwork.id(), nodeSubnetName)
             .withSku(ManagedClusterSKU().withName(ManagedClusterSKUName.BASIC).withTier(ManagedClusterSKUTier.PAID))
             .withDnsPrefix("corda-internal-$dnsSuffix")
-            .defineLoadBalancerAwareNetworkProfile()
-            .withLoadBalancerSku(LoadBalancerSku.STANDARD)
-            .withServiceCidr("10.0.0.0/16")
-            .withDnsServiceIP("10.0.0.10")
-            .withPodCidr("10.244.0.0/16")
-            .withDockerBridgeCidr("172.17.0.1/16")
-            .attach()
+            .withClusterNetworking(networkPlan.mode)
             .enableRBAC()
 
 
-        val floatClusterFuture = CompletableFuture<KubernetesCluster>().also { future ->
-            floatClusterCreate.createAsync(object : ServiceCallback<KubernetesCluster> {
-                override fun failure(t: Throwable) {
-                    future.completeExceptionally(t)
-                }
-
-                override fun success(result: KubernetesCluster) {
-                    future.complete(result)
-                }
-            })
-        }
-
-        val nodeClusterFuture = CompletableFuture<KubernetesCluster>().also { future ->
-            nodeClusterCreate.createAsync(object : ServiceCallback<KubernetesCluster> {
-                override fun failure(t: Throwable) {
-                    future.completeExceptionally(t)
-                }
-
-                override fun success(result: KubernetesCluster) {
-                    future.complete(result)
-                }
-            })
-        }
+        val floatCluster = async { floatClusterCreate.createSuspending() }
+        val nodeCluster = async { nodeClusterCreate.createSuspending() }
 
-        return floatClusterFuture.thenCombineAsync<KubernetesCluster, Clusters>(nodeClusterFuture) { floatCluster, nodeCluster ->
-            Clusters(nodeCluster, floatCluster, network)
-        }.get()
+        Clusters(
+            nodeCluster.await(),
+            floatCluster.await(),
+            network,
+            networkPlan.poolProfiles.internalPools.map { it.placement },
+            networkPlan.poolProfiles.dmzPools.map { it.placement }
+        )
     }
 
 }
@@ -132,13 +91,18 @@ class KubernetesClusterCreator(
 data class PersistableClusters(
     val nodeClusterId: String,
     val dmzClusterId: String,
-    val clusterNetwork: PersistableNetwork
+    val clusterNetwork: PersistableNetwork,
+    //null for clusters persisted before agent pools were labelled per workload
+    val nodePoolPlacements: List<WorkloadPlacement>?,
+    val dmzPoolPlacements: List<WorkloadPlacement>?
 )
 
 data class Clusters(
     val nodeCluster: KubernetesCluster,
     val floatCluster: KubernetesCluster,
-    val clusterNetwork: ClusterNetwork
+    val clusterNetwork: ClusterNetwork,
+    val nodePoolPlacements: List<WorkloadPlacement>,
+    val dmzPoolPlacements: List<WorkloadPlacement>
 ) {
     fun dmzApiSource(): () -> ApiClient {
         return {
@@ -156,17 +120,45 @@ data class Clusters(
         }
     }
 
+    //zonal managed disks can only attach to vms in the same zone, so artemis storage must follow its pool
+    fun messagingZone(): String? {
+        return nodeCluster.agentPools().values
+            .firstOrNull { it.inner().nodeLabels()?.get(WorkloadPlacement.WORKLOAD_LABEL) == WorkloadPlacement.ARTEMIS.labelValue }
+            ?.inner()?.availabilityZones()?.singleOrNull()
+    }
+
     fun toPersistable(): PersistableClusters {
         val persistableNetwork = clusterNetwork.toPersistable()
-        return PersistableClusters(nodeCluster.id(), floatCluster.id(), persistableNetwork)
+        return PersistableClusters(nodeCluster.id(), floatCluster.id(), persistableNetwork, nodePoolPlacements, dmzPoolPlacements)
     }
 
     companion object {
         fun fromPersistable(p: PersistableClusters, mgmAzure: Azure): Clusters {
+            val nodePoolPlacements = requirePlacements(p.nodeClusterId, p.nodePoolPlacements, ClusterPoolProfiles.REQUIRED_INTERNAL_PLACEMENTS)
+            val dmzPoolPlacements = requirePlacements(p.dmzClusterId, p.dmzPoolPlacements, ClusterPoolProfiles.REQUIRED_DMZ_PLACEMENTS)
             val nodeCluster = mgmAzure.kubernetesClusters().getById(p.nodeClusterId)
             val dmzCluster = mgmAzure.kubernetesClusters().getById(p.dmzClusterId)
             val clusterNetwork = ClusterNetwork.fromPersistable(p.clusterNetwork, mgmAzure)
-            return Clusters(nodeCluster, dmzCluster, clusterNetwork)
+            return Clusters(nodeCluster, dmzCluster, clusterNetwork, nodePoolPlacements, dmzPoolPlacements)
+        }
+
+        //workloads always select a labelled pool, so fail here rather than leave pods and jobs pending on an older cluster
+        private fun requirePlacements(
+            clusterId: String,
+            placements: List<WorkloadPlacement>?,
+            required: Set<WorkloadPlacement>
+        ): List<WorkloadPlacement> {
+            if (placements == null) {
+                throw IllegalStateException(
+                    "cluster $clusterId was created without workload labelled agent pools, " +
+                            "no workload could be scheduled on it. recreate the infrastructure to deploy to it"
+                )
+            }
+            val missing = ClusterPoolProfiles.missingPlacements(placements, required)
+            if (missing.isNotEmpty()) {
+                throw IllegalStateException("cluster $clusterId has no agent pool for workloads: $missing")
+            }
+            return placements
         }
     }
 }
@@ -188,6 +180,54 @@ private fun <ParentT> KubernetesClusterAgentPool.DefinitionStages.WithAttach<Par
     return this
 }
 
+private fun <ParentT> KubernetesClusterAgentPool.DefinitionStages.WithAttach<ParentT>.withNodeTuning(
+    maxPods: Int,
+    osDiskSizeGB: Int,
+    taints: List<String>
+): KubernetesClusterAgentPool.DefinitionStages.WithAttach<ParentT> {
+    (this as KubernetesClusterAgentPool).inner().withMaxPods(maxPods)
+    (this as KubernetesClusterAgentPool).inner().withOsDiskSizeGB(osDiskSizeGB)
+    if (taints.isNotEmpty()) {
+        (this as KubernetesClusterAgentPool).inner().withNodeTaints(taints)
+    }
+    return this
+}
+
+private fun <ParentT> KubernetesClusterAgentPool.DefinitionStages.WithAttach<ParentT>.withAvailabilityZones(
+    zones: List<String>
+): KubernetesClusterAgentPool.DefinitionStages.WithAttach<ParentT> {
+    if (zones.isNotEmpty()) {
+        (this as KubernetesClusterAgentPool).inner().withAvailabilityZones(zones)
+    }
+    return this
+}
+
+//every pool is labelled with its workload so deployments can select it, dedicated pools are also tainted
+private fun KubernetesCluster.DefinitionStages.WithAgentPool.withAgentPools(
+    pools: List<NodePoolProfile>,
+    topology: ClusterTopology,
+    networkId: String,
+    subnetName: String
+): KubernetesCluster.DefinitionStages.WithCreate {
+    if (pools.isEmpty()) {
+        throw IllegalArgumentException("at least one agent pool is required")
+    }
+    return pools.fold(this as KubernetesCluster.DefinitionStages.WithCreate) { cluster, pool ->
+        cluster.defineAgentPool(pool.name)
+            .withLabel(WorkloadPlacement.WORKLOAD_LABEL, pool.placement.labelValue)
+            .withVirtualMachineSize(pool.vmSize)
+            .withMode(pool.mode)
+            .withOSType(OSType.LINUX)
+            .withAgentPoolVirtualMachineCount(pool.minCount)
+            .withAgentPoolType(AgentPoolType.VIRTUAL_MACHINE_SCALE_SETS)
+            .withVirtualNetwork(networkId, subnetName)
+            .withAutoScale(pool.minCount, pool.maxCount)
+            .withNodeTuning(pool.maxPods, pool.osDiskSizeGB, pool.placement.taints)
+            .withAvailabilityZones(topology.zonesFor(pool.placement))
+            .attach()
+    }
+}
+
 interface LabelAwarePoolDefinition :
     KubernetesClusterAgentPool.DefinitionStages.Blank<KubernetesCluster.DefinitionStages.WithCreate> {
     fun withLabel(key: String, value: String): LabelAwarePoolDefinition
@@ -205,6 +245,17 @@ private fun KubernetesCluster.DefinitionStages.WithCreate.defineAgentPool(poolNa
     }
 }
 
+//with azure cni pods take their addresses from the node subnet, so a pod cidr is only set for kubenet
+private fun KubernetesCluster.DefinitionStages.WithCreate.withClusterNetworking(mode: ClusterNetworkingMode): KubernetesCluster.DefinitionStages.WithCreate {
+    val networkProfile = defineLoadBalancerAwareNetworkProfile()
+        .withLoadBalancerSku(LoadBalancerSku.STANDARD)
+        .withNetworkPlugin(mode.networkPlugin)
+        .withServiceCidr("10.0.0.0/16")
+        .withDnsServiceIP("10.0.0.10")
+        .withDockerBridgeCidr("172.17.0.1/16")
+    return mode.podCidr?.let { networkProfile.withPodCidr(it).attach() } ?: networkProfile.attach()
+}
+
 interface NetworkProfileWithLoadBalancerDefinitionStage :
     KubernetesCluster.DefinitionStages.NetworkProfileDefinitionStages.Blank<KubernetesCluster.DefinitionStages.WithCreate> {
     fun withLoadBalancerSku(sku: LoadBalancerSku): NetworkProfileWithLoadBalancerDefinitionStage
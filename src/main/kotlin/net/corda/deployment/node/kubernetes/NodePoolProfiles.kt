@@ -0,0 +1,115 @@
+package net.corda.deployment.node.kubernetes
+
+import com.microsoft.azure.management.containerservice.AgentPoolMode
+import com.microsoft.azure.management.containerservice.ContainerServiceVMSizeTypes
+import io.kubernetes.client.openapi.models.V1Toleration
+import io.kubernetes.client.openapi.models.V1TolerationBuilder
+
+//dedicated pools are tainted so that only workloads which explicitly tolerate them are scheduled there
+enum class WorkloadPlacement(val labelValue: String, val dedicated: Boolean) {
+    SYSTEM("system", false),
+    ARTEMIS("artemis", true),
+    NODES("nodes", true),
+    FLOATS("floats", true),
+    SETUP("setup", true);
+
+    val nodeSelector: Map<String, String>
+        get() = mapOf(WORKLOAD_LABEL to labelValue)
+
+    val taints: List<String>
+        get() = if (dedicated) listOf("$WORKLOAD_LABEL=$labelValue:NoSchedule") else emptyList()
+
+    fun tolerations(): List<V1Toleration> {
+        return if (dedicated) {
+            listOf(
+                V1TolerationBuilder()
+                    .withKey(WORKLOAD_LABEL)
+                    .withOperator("Equal")
+                    .withValue(labelValue)
+                    .withEffect("NoSchedule")
+                    .build()
+            )
+        } else {
+            emptyList()
+        }
+    }
+
+    companion object {
+        const val WORKLOAD_LABEL = "corda.net/workload"
+    }
+}
+
+enum class ClusterTopology(private val zones: List<String>, private val messagingZone: String?) {
+    REGIONAL(emptyList(), null),
+    //the messaging pool is pinned to one zone so artemis, the bridge and zookeeper never talk across zones,
+    //every other pool is spread over all three zones
+    ZONAL(listOf("1", "2", "3"), "1");
+
+    fun zonesFor(placement: WorkloadPlacement): List<String> {
+        return if (placement == WorkloadPlacement.ARTEMIS && messagingZone != null) listOf(messagingZone) else zones
+    }
+}
+
+//general purpose D and compute optimised F sizes give a fixed cpu allocation, unlike burstable B sizes which throttle once credits run out
+data class NodePoolProfile(
+    val name: String,
+    val placement: WorkloadPlacement,
+    val vmSize: ContainerServiceVMSizeTypes,
+    val minCount: Int,
+    val maxCount: Int,
+    val maxPods: Int = 30,
+    val osDiskSizeGB: Int = 64
+) {
+    init {
+        if (!name.matches(Regex("^[a-z][a-z0-9]{0,11}$"))) {
+            throw IllegalArgumentException("agent pool name must be lowercase alphanumeric and at most 12 characters: $name")
+        }
+        if (minCount < 1 || maxCount < minCount) {
+            throw IllegalArgumentException("agent pool $name must have 1 <= minCount <= maxCount")
+        }
+    }
+
+    val mode: AgentPoolMode
+        get() = if (placement == WorkloadPlacement.SYSTEM) AgentPoolMode.SYSTEM else AgentPoolMode.USER
+}
+
+data class ClusterPoolProfiles(
+    val dmzPools: List<NodePoolProfile>,
+    val internalPools: List<NodePoolProfile>,
+    val topology: ClusterTopology = ClusterTopology.REGIONAL
+) {
+    init {
+        if (dmzPools.none { it.mode == AgentPoolMode.SYSTEM } || internalPools.none { it.mode == AgentPoolMode.SYSTEM }) {
+            throw IllegalArgumentException("each cluster requires a system pool")
+        }
+        missingPlacements(dmzPools.map { it.placement }, REQUIRED_DMZ_PLACEMENTS).let {
+            if (it.isNotEmpty()) throw IllegalArgumentException("dmz cluster has no pool for workloads: $it")
+        }
+        missingPlacements(internalPools.map { it.placement }, REQUIRED_INTERNAL_PLACEMENTS).let {
+            if (it.isNotEmpty()) throw IllegalArgumentException("internal cluster has no pool for workloads: $it")
+        }
+    }
+
+    companion object {
+        //every workload selects its pool by label, a cluster without a matching pool leaves its pods pending forever
+        val REQUIRED_DMZ_PLACEMENTS = setOf(WorkloadPlacement.FLOATS)
+        val REQUIRED_INTERNAL_PLACEMENTS = setOf(WorkloadPlacement.ARTEMIS, WorkloadPlacement.NODES, WorkloadPlacement.SETUP)
+
+        fun missingPlacements(placements: Collection<WorkloadPlacement>, required: Set<WorkloadPlacement>): Set<WorkloadPlacement> {
+            return required - placements
+        }
+
+        val DEFAULT = ClusterPoolProfiles(
+            dmzPools = listOf(
+                NodePoolProfile("dmzsystem", WorkloadPlacement.SYSTEM, ContainerServiceVMSizeTypes.STANDARD_D2S_V3, 1, 3),
+                NodePoolProfile("floats", WorkloadPlacement.FLOATS, ContainerServiceVMSizeTypes.STANDARD_F4S_V2, 1, 5)
+            ),
+            internalPools = listOf(
+                NodePoolProfile("system", WorkloadPlacement.SYSTEM, ContainerServiceVMSizeTypes.STANDARD_D2S_V3, 1, 3),
+                NodePoolProfile("artemis", WorkloadPlacement.ARTEMIS, ContainerServiceVMSizeTypes.STANDARD_F4S_V2, 1, 3),
+                NodePoolProfile("nodes", WorkloadPlacement.NODES, ContainerServiceVMSizeTypes.STANDARD_D8S_V3, 1, 10),
+                NodePoolProfile("setup", WorkloadPlacement.SETUP, ContainerServiceVMSizeTypes.STANDARD_D2S_V3, 1, 5)
+            )
+        )
+    }
+}
@@ -0,0 +1,43 @@
+package net.corda.deployment.node.kubernetes
+
+import io.kubernetes.client.openapi.models.V1Affinity
+import io.kubernetes.client.openapi.models.V1LabelSelector
+import io.kubernetes.client.openapi.models.V1PodAffinity
+import io.kubernetes.client.openapi.models.V1PodAffinityTerm
+import io.kubernetes.client.openapi.models.V1PodAntiAffinity
+import io.kubernetes.client.openapi.models.V1WeightedPodAffinityTerm
+
+//the beta label is the only zone label populated on 1.16 clusters
+const val ZONE_TOPOLOGY_KEY = "failure-domain.beta.kubernetes.io/zone"
+const val HOST_TOPOLOGY_KEY = "kubernetes.io/hostname"
+
+val ARTEMIS_POD_LABELS = mapOf("run" to "artemis")
+
+//preferred rather than required terms, a pod should still schedule if its peer is being rescheduled
+fun podAffinity(
+    colocateWith: Map<String, String>? = null,
+    spreadFrom: Map<String, String>? = null,
+    spreadTopologyKeys: List<String> = listOf(ZONE_TOPOLOGY_KEY, HOST_TOPOLOGY_KEY)
+): V1Affinity {
+    return V1Affinity()
+        .podAffinity(colocateWith?.let {
+            V1PodAffinity().preferredDuringSchedulingIgnoredDuringExecution(
+                listOf(weightedTerm(it, ZONE_TOPOLOGY_KEY, 100))
+            )
+        })
+        .podAntiAffinity(spreadFrom?.let { labels ->
+            V1PodAntiAffinity().preferredDuringSchedulingIgnoredDuringExecution(
+                spreadTopologyKeys.map { weightedTerm(labels, it, 50) }
+            )
+        })
+}
+
+private fun weightedTerm(labels: Map<String, String>, topologyKey: String, weight: Int): V1WeightedPodAffinityTerm {
+    return V1WeightedPodAffinityTerm()
+        .weight(weight)
+        .podAffinityTerm(
+            V1PodAffinityTerm()
+                .topologyKey(topologyKey)
+                .labelSelector(V1LabelSelector().matchLabels(labels))
+        )
+}
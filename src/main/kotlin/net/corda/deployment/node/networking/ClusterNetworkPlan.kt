@@ -0,0 +1,136 @@
+package net.corda.deployment.node.networking
+
+import com.microsoft.azure.management.containerservice.ContainerServiceVMSizeTypes
+import com.microsoft.azure.management.containerservice.NetworkPlugin
+import net.corda.deployment.node.kubernetes.ClusterPoolProfiles
+import net.corda.deployment.node.kubernetes.NodePoolProfile
+import net.corda.deployment.node.kubernetes.WorkloadPlacement
+import net.corda.deployment.node.networking.ClusterNetwork.Companion.ADDRESS_SPACE
+import net.corda.deployment.node.networking.ClusterNetwork.Companion.DMZ_CIDR
+import net.corda.deployment.node.networking.ClusterNetwork.Companion.DMZ_IP_PREFIX
+import net.corda.deployment.node.networking.ClusterNetwork.Companion.INTERNAL_CIDR
+
+//kubenet routes pod traffic through a route table hop, azure cni gives every pod an address on the vnet itself
+//which means the subnets must be large enough to hold every pod as well as every node
+enum class ClusterNetworkingMode(
+    val networkPlugin: NetworkPlugin,
+    val podCidr: String?,
+    val internalCidr: String,
+    val dmzCidr: String
+) {
+    KUBENET(NetworkPlugin.KUBENET, "10.244.0.0/16", INTERNAL_CIDR, DMZ_CIDR),
+    //the dmz subnet still contains DMZ_IP_PREFIX so the addresses handed out to float services are unchanged
+    AZURE_CNI(NetworkPlugin.AZURE, null, "192.168.32.0/19", "192.168.0.0/20");
+
+    fun ipsPerNode(pool: NodePoolProfile): Int {
+        return if (this == AZURE_CNI) pool.maxPods + 1 else 1
+    }
+}
+
+data class ClusterNetworkPlan(
+    val mode: ClusterNetworkingMode = ClusterNetworkingMode.KUBENET,
+    val poolProfiles: ClusterPoolProfiles = ClusterPoolProfiles.DEFAULT
+) {
+
+    companion object {
+        //azure reserves the network, broadcast and three further addresses in every subnet
+        private const val AZURE_RESERVED_ADDRESSES_PER_SUBNET = 5
+        private val VM_SIZE_PATTERN = Regex("^Standard_([A-Z]+)(\\d+)[a-z]*(?:_v(\\d+))?$")
+        private val ACCELERATED_NETWORKING_FAMILIES = setOf("D", "DS", "E", "F")
+        private val LATENCY_SENSITIVE_PLACEMENTS = setOf(WorkloadPlacement.ARTEMIS, WorkloadPlacement.NODES, WorkloadPlacement.FLOATS)
+    }
+
+    //fail before anything is provisioned rather than when the cluster runs out of addresses
+    fun validate(): ClusterNetworkPlan {
+        val addressSpace = Cidr.parse(ADDRESS_SPACE)
+        val internalSubnet = Cidr.parse(mode.internalCidr)
+        val dmzSubnet = Cidr.parse(mode.dmzCidr)
+        listOf(internalSubnet, dmzSubnet).forEach {
+            if (!addressSpace.contains(it)) {
+                throw IllegalArgumentException("subnet $it is not within the vnet address space $ADDRESS_SPACE")
+            }
+        }
+        if (internalSubnet.overlaps(dmzSubnet)) {
+            throw IllegalArgumentException("internal subnet $internalSubnet overlaps dmz subnet $dmzSubnet")
+        }
+        if (!dmzSubnet.contains(Cidr.parse("$DMZ_IP_PREFIX.0/24"))) {
+            throw IllegalArgumentException("dmz subnet $dmzSubnet does not contain the float service range $DMZ_IP_PREFIX.0/24")
+        }
+        mode.podCidr?.let { podCidr ->
+            if (Cidr.parse(podCidr).overlaps(addressSpace)) {
+                throw IllegalArgumentException("pod cidr $podCidr overlaps the vnet address space $ADDRESS_SPACE")
+            }
+        }
+        checkCapacity("internal", internalSubnet, poolProfiles.internalPools)
+        checkCapacity("dmz", dmzSubnet, poolProfiles.dmzPools)
+        if (mode == ClusterNetworkingMode.AZURE_CNI) {
+            (poolProfiles.internalPools + poolProfiles.dmzPools)
+                .filter { it.placement in LATENCY_SENSITIVE_PLACEMENTS }
+                .filterNot { supportsAcceleratedNetworking(it.vmSize) }
+                .forEach {
+                    throw IllegalArgumentException("agent pool ${it.name} uses ${it.vmSize} which does not support accelerated networking")
+                }
+        }
+        return this
+    }
+
+    //every pool can surge by one node during an upgrade, and with azure cni each node pre-allocates maxPods addresses
+    private fun checkCapacity(clusterName: String, subnet: Cidr, pools: List<NodePoolProfile>) {
+        val required = pools.map { (it.maxCount + 1) * mode.ipsPerNode(it) }.sum()
+        val available = subnet.size - AZURE_RESERVED_ADDRESSES_PER_SUBNET
+        if (required > available) {
+            throw IllegalArgumentException(
+                "$clusterName subnet $subnet has $available usable addresses but its agent pools require $required with $mode networking"
+            )
+        }
+        println("$clusterName subnet $subnet: $required of $available addresses planned for $mode")
+    }
+
+    //hyperthreaded sizes need at least four vcpus for accelerated networking, the older series need two
+    private fun supportsAcceleratedNetworking(vmSize: ContainerServiceVMSizeTypes): Boolean {
+        val match = VM_SIZE_PATTERN.matchEntire(vmSize.toString()) ?: return false
+        val family = match.groupValues[1]
+        val vCpus = match.groupValues[2].toInt()
+        val version = match.groupValues[3].toIntOrNull() ?: 1
+        if (family !in ACCELERATED_NETWORKING_FAMILIES) {
+            return false
+        }
+        val hyperThreaded = (family.startsWith("F") && version >= 2) || (!family.startsWith("F") && version >= 3)
+        return vCpus >= if (hyperThreaded) 4 else 2
+    }
+}
+
+internal data class Cidr(val start: Long, val prefixLength: Int) {
+    val size: Long
+        get() = 1L shl (32 - prefixLength)
+
+    private val end: Long
+        get() = start + size - 1
+
+    fun contains(other: Cidr): Boolean {
+        return other.start >= start && other.end <= end
+    }
+
+    fun overlaps(other: Cidr): Boolean {
+        return other.start <= end && start <= other.end
+    }
+
+    override fun toString(): String {
+        return (3 downTo 0).joinToString(".") { ((start shr (it * 8)) and 0xff).toString() } + "/$prefixLength"
+    }
+
+    companion object {
+        fun parse(cidr: String): Cidr {
+            val (address, prefix) = cidr.split("/").takeIf { it.size == 2 }
+                ?: throw IllegalArgumentException("invalid cidr: $cidr")
+            val octets = address.split(".").map { it.toLongOrNull() ?: -1 }
+            if (octets.size != 4 || octets.any { it !in 0..255 }) {
+                throw IllegalArgumentException("invalid cidr: $cidr")
+            }
+            val prefixLength = prefix.toIntOrNull()?.takeIf { it in 0..32 }
+                ?: throw IllegalArgumentException("invalid cidr: $cidr")
+            val mask = (0xffffffffL shl (32 - prefixLength)) and 0xffffffffL
+            return Cidr(octets.fold(0L) { acc, octet -> (acc shl 8) or octet } and mask, prefixLength)
+        }
+    }
+}
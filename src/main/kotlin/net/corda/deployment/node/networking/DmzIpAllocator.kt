@@ -0,0 +1,135 @@
+package net.corda.deployment.node.networking
+
+import io.kubernetes.client.openapi.ApiClient
+import io.kubernetes.client.openapi.ApiException
+import io.kubernetes.client.openapi.apis.CoreV1Api
+import io.kubernetes.client.openapi.models.V1ConfigMapBuilder
+import net.corda.deployment.node.networking.ClusterNetwork.Companion.DMZ_IP_PREFIX
+
+//address to owner, with the version it was read at. a null version means nothing has been reserved yet
+data class DmzIpReservations(val addressToOwner: Map<String, String>, val version: String?)
+
+interface DmzIpReservationStore {
+    fun read(): DmzIpReservations
+
+    //false if the reservations were changed by someone else since they were read
+    fun write(read: DmzIpReservations, addressToOwner: Map<String, String>): Boolean
+}
+
+class DmzIpAllocator internal constructor(
+    private val addressesInUse: () -> Set<String>,
+    private val store: DmzIpReservationStore
+) {
+
+    constructor(
+        clusterNetwork: ClusterNetwork,
+        api: () -> ApiClient,
+        reservationNamespace: String = "default"
+    ) : this({ subnetAddressesInUse(clusterNetwork) }, ConfigMapReservationStore(api, reservationNamespace))
+
+    companion object {
+        const val RESERVATION_CONFIG_MAP_NAME = "dmz-ip-reservations"
+
+        //azure reserves the first four addresses and the broadcast address of every subnet
+        private const val FIRST_USABLE_HOST = 4
+        private const val LAST_USABLE_HOST = 254
+        private const val MAX_RESERVATION_ATTEMPTS = 10
+
+        //owners that already hold a reservation keep it, so re-running a deployment is idempotent. everyone else
+        //takes the lowest address that is neither reserved nor already assigned in the subnet
+        fun assignAddresses(
+            owners: List<String>,
+            addressToOwner: Map<String, String>,
+            addressesInUse: Set<String>
+        ): Map<String, String> {
+            val reservations = addressToOwner.toMutableMap()
+            val reservedOwners = addressToOwner.values.toSet()
+            val candidates = (FIRST_USABLE_HOST..LAST_USABLE_HOST).asSequence()
+                .map { "$DMZ_IP_PREFIX.$it" }
+                .filter { it !in addressesInUse && it !in addressToOwner }
+                .iterator()
+            owners.distinct().filter { it !in reservedOwners }.forEach { owner ->
+                if (!candidates.hasNext()) {
+                    throw IllegalStateException("Could not find an available IP within DMZ subnet")
+                }
+                reservations[candidates.next()] = owner
+            }
+            return reservations
+        }
+
+        //a single subnet read with its ip configurations expanded replaces probing each address
+        private fun subnetAddressesInUse(clusterNetwork: ClusterNetwork): Set<String> {
+            val network = clusterNetwork.createdNetwork
+            val subnet = network.manager().inner().subnets()
+                .get(network.resourceGroupName(), network.name(), clusterNetwork.floatSubnetName, "ipConfigurations")
+                ?: throw IllegalStateException("could not find subnet ${clusterNetwork.floatSubnetName}")
+            return (subnet.ipConfigurations() ?: emptyList()).mapNotNull { it.privateIPAddress() }.toSet()
+        }
+    }
+
+    fun allocate(owners: List<String>): Map<String, String> {
+        val inUse = addressesInUse()
+        repeat(MAX_RESERVATION_ATTEMPTS) {
+            val existing = store.read()
+            val reservations = assignAddresses(owners, existing.addressToOwner, inUse)
+            if (reservations == existing.addressToOwner || store.write(existing, reservations)) {
+                val ownerToAddress = reservations.entries.associate { (address, owner) -> owner to address }
+                return owners.associateWith { ownerToAddress.getValue(it) }.also {
+                    println("reserved dmz addresses: $it")
+                }
+            }
+            println("dmz ip reservations changed concurrently, retrying")
+        }
+        throw IllegalStateException("could not reserve dmz addresses after $MAX_RESERVATION_ATTEMPTS attempts")
+    }
+
+    fun allocate(owner: String): String {
+        return allocate(listOf(owner)).getValue(owner)
+    }
+}
+
+//reservations live in a config map on the dmz cluster, the api server's optimistic concurrency
+//guarantees that two deployers can never both commit the same address
+private class ConfigMapReservationStore(
+    private val api: () -> ApiClient,
+    private val namespace: String
+) : DmzIpReservationStore {
+
+    companion object {
+        private const val HTTP_NOT_FOUND = 404
+        private const val HTTP_CONFLICT = 409
+    }
+
+    private val coreApi by lazy { CoreV1Api(api()) }
+
+    override fun read(): DmzIpReservations {
+        return try {
+            val configMap = coreApi.readNamespacedConfigMap(DmzIpAllocator.RESERVATION_CONFIG_MAP_NAME, namespace, null, null, null)
+            DmzIpReservations(configMap.data ?: emptyMap(), configMap.metadata?.resourceVersion)
+        } catch (e: ApiException) {
+            if (e.code == HTTP_NOT_FOUND) DmzIpReservations(emptyMap(), null) else throw e
+        }
+    }
+
+    override fun write(read: DmzIpReservations, addressToOwner: Map<String, String>): Boolean {
+        //the resource version carried over from the read makes the replace a compare-and-swap
+        val configMap = V1ConfigMapBuilder()
+            .withNewMetadata()
+            .withName(DmzIpAllocator.RESERVATION_CONFIG_MAP_NAME)
+            .withNamespace(namespace)
+            .withResourceVersion(read.version)
+            .endMetadata()
+            .withData(addressToOwner)
+            .build()
+        return try {
+            if (read.version == null) {
+                coreApi.createNamespacedConfigMap(namespace, configMap, null, null, null)
+            } else {
+                coreApi.replaceNamespacedConfigMap(DmzIpAllocator.RESERVATION_CONFIG_MAP_NAME, namespace, configMap, null, null, null)
+            }
+            true
+        } catch (e: ApiException) {
+            if (e.code == HTTP_CONFLICT) false else throw e
+        }
+    }
+}
@@ -3,12 +3,11 @@ package net.corda.deployment.node.networking
 import com.microsoft.azure.management.Azure
 import com.microsoft.azure.management.network.Network
 import com.microsoft.azure.management.network.PublicIPAddress
-import com.microsoft.azure.management.network.ServiceEndpointPropertiesFormat
+import com.microsoft.azure.management.network.ServiceEndpointType
 import com.microsoft.azure.management.resources.ResourceGroup
-import com.microsoft.azure.management.resources.fluentcore.arm.Region
+import kotlinx.coroutines.Deferred
+import net.corda.deployment.node.createSuspending
 import net.corda.deployment.node.networking.ClusterNetwork.Companion.ADDRESS_SPACE
-import net.corda.deployment.node.networking.ClusterNetwork.Companion.DMZ_CIDR
-import net.corda.deployment.node.networking.ClusterNetwork.Companion.INTERNAL_CIDR
 
 class PersistableNetwork(
     val nodeSubnetName: String,
@@ -48,62 +47,32 @@ data class ClusterNetwork(
     fun toPersistable(): PersistableNetwork {
         return PersistableNetwork(nodeSubnetName, floatSubnetName, createdNetwork.id(), p2pAddress.id(), controlAddress.id())
     }
-
-    @ExperimentalUnsignedTypes
-    fun getNextAvailableDMZInternalIP(): String {
-        var lastByteOfAddress: UByte = 0u
-
-        do {
-            lastByteOfAddress++
-            println("checking if: $DMZ_IP_PREFIX.$lastByteOfAddress is available as internalIp")
-        } while (!createdNetwork.isPrivateIPAddressAvailable("$DMZ_IP_PREFIX.$lastByteOfAddress") && lastByteOfAddress < 254u)
-
-
-        if (!createdNetwork.isPrivateIPAddressAvailable("$DMZ_IP_PREFIX.$lastByteOfAddress") || lastByteOfAddress >= 254u) {
-            throw IllegalStateException("Could not find an available IP within DMZ subnet")
-        } else {
-            return "$DMZ_IP_PREFIX.$lastByteOfAddress"
-        }
-    }
 }
 
 class NetworkCreator(
     val azure: Azure,
     val resourceGroup: ResourceGroup
 ) {
-    fun createNetworkForClusters(controlIp: PublicIPAddress, p2pIp: PublicIPAddress): ClusterNetwork {
+    //the vnet does not need the public ips, so it is created while they are still being allocated
+    suspend fun createNetworkForClusters(
+        controlIp: Deferred<PublicIPAddress>,
+        p2pIp: Deferred<PublicIPAddress>,
+        networkPlan: ClusterNetworkPlan
+    ): ClusterNetwork {
         val nodeSubnetName = "internalClusterSubNet"
         val floatSubnetName = "dmzClusterSubNet"
+        //service endpoints are part of the initial definition to avoid extra createOrUpdate round trips
         val createdNetwork = azure.networks().define("corda-vnet")
             .withRegion(resourceGroup.region())
             .withExistingResourceGroup(resourceGroup)
             .withAddressSpace(ADDRESS_SPACE)
-            .withSubnet(nodeSubnetName, INTERNAL_CIDR)
-            .withSubnet(floatSubnetName, DMZ_CIDR)
-            .create().also {
-                addSubnetServiceEndPoint(it, nodeSubnetName, "Microsoft.Sql", resourceGroup.region(), azure)
-                addSubnetServiceEndPoint(it, nodeSubnetName, "Microsoft.KeyVault", resourceGroup.region(), azure)
-            }
-        return ClusterNetwork(nodeSubnetName, floatSubnetName, createdNetwork, p2pIp, controlIp)
-    }
-
-    private fun addSubnetServiceEndPoint(
-        it: Network,
-        nodeSubnetName: String,
-        serviceEndPointName: String,
-        region: Region,
-        azure: Azure
-    ) {
-        val virtualNetworkInner = it.inner()
-        val subnet = (virtualNetworkInner.subnets() ?: mutableListOf()).single { it.name() == nodeSubnetName }
-        subnet.withServiceEndpoints((subnet.serviceEndpoints() ?: mutableListOf()).let { endpointList ->
-            endpointList.add(
-                ServiceEndpointPropertiesFormat().withService(serviceEndPointName).withLocations(
-                    listOf(region.name())
-                )
-            )
-            endpointList
-        })
-        azure.networks().inner().createOrUpdate(it.resourceGroupName(), it.name(), virtualNetworkInner)
+            .defineSubnet(nodeSubnetName)
+            .withAddressPrefix(networkPlan.mode.internalCidr)
+            .withAccessFromService(ServiceEndpointType.MICROSOFT_SQL)
+            .withAccessFromService(ServiceEndpointType.fromString("Microsoft.KeyVault"))
+            .attach()
+            .withSubnet(floatSubnetName, networkPlan.mode.dmzCidr)
+            .createSuspending()
+        return ClusterNetwork(nodeSubnetName, floatSubnetName, createdNetwork, p2pIp.await(), controlIp.await())
     }
 }
\ No newline at end of file
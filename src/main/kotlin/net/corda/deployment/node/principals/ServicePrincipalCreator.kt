@@ -4,6 +4,7 @@ import com.microsoft.azure.management.Azure
 import com.microsoft.azure.management.graphrbac.BuiltInRole
 import com.microsoft.azure.management.graphrbac.ServicePrincipal
 import com.microsoft.azure.management.resources.ResourceGroup
+import net.corda.deployment.node.createSuspending
 import org.apache.commons.lang3.RandomStringUtils
 import org.bouncycastle.asn1.x500.X500Name
 import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter
@@ -28,7 +29,7 @@ class ServicePrincipalCreator(
     private val resourceGroup: ResourceGroup
 ) {
 
-    fun createServicePrincipalAndCredentials(principalId: String, permissionsOnResourceGroup: Boolean): PrincipalAndCredentials {
+    suspend fun createServicePrincipalAndCredentials(principalId: String, permissionsOnResourceGroup: Boolean): PrincipalAndCredentials {
         val servicePrincipalKeyPair = generateRSAKeyPair()
         val servicePrincipalCert = createSelfSignedCertificate(servicePrincipalKeyPair, "CN=CLI-Login, OU=${principalId}")
         val clientSecret = createServicePrincipalPassword(32)
@@ -48,7 +49,7 @@ class ServicePrincipalCreator(
             .withAsymmetricX509Certificate()
             .withPublicKey(servicePrincipalCert.encoded)
             .attach()
-            .create()
+            .createSuspending()
 
         //must be alphanumeric to avoid issues with escaping during config parsing
         val p12KeyStorePassword = RandomStringUtils.randomAlphanumeric(24)
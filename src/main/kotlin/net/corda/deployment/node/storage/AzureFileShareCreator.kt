@@ -1,5 +1,6 @@
 package net.corda.deployment.node.storage
 
+import com.azure.core.util.Context
 import com.azure.storage.common.StorageSharedKeyCredential
 import com.azure.storage.file.share.ShareClient
 import com.azure.storage.file.share.ShareFileClient
@@ -7,11 +8,15 @@ import com.azure.storage.file.share.ShareServiceClient
 import com.azure.storage.file.share.ShareServiceClientBuilder
 import com.microsoft.azure.management.Azure
 import com.microsoft.azure.management.resources.ResourceGroup
+import com.microsoft.azure.management.storage.Kind
 import com.microsoft.azure.management.storage.StorageAccount
+import com.microsoft.azure.management.storage.StorageAccountSkuType
 import com.microsoft.azure.storage.CloudStorageAccount
 import com.microsoft.azure.storage.file.CloudFile
 import com.microsoft.azure.storage.file.CloudFileShare
 import io.kubernetes.client.openapi.ApiClient
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.withContext
 import net.corda.deployment.node.kubernetes.SecretCreator
 import java.time.Duration
 import java.time.Instant
@@ -21,13 +26,22 @@ data class PersistableAzureFileShareCreator(
     val id: String,
     val resourceGroup: String,
     val namespace: String,
-    val instanceSpecificSuffix: String
+    val instanceSpecificSuffix: String,
+    val volumeDriver: AzureFilesVolumeDriver? = null,
+    val storageTier: StorageTier? = null
 )
 
+//premium file storage is billed and performs by provisioned size, iops and throughput scale with each share's quota
+enum class StorageTier(val minimumShareQuotaGB: Int?) {
+    STANDARD(null),
+    PREMIUM(100)
+}
+
 data class PersistableShare(
     val shareName: String,
     val storageAccount: String,
-    val storageSecrets: AzureFileSecrets
+    val storageSecrets: AzureFileSecrets,
+    val volumes: ShareVolumes? = null
 )
 
 class AzureFileShareCreator(
@@ -35,17 +49,34 @@ class AzureFileShareCreator(
     private val azure: Azure,
     private val resourceGroup: ResourceGroup,
     private val namespace: String,
-    private val instanceSpecificSuffix: String
+    private val instanceSpecificSuffix: String,
+    private val volumeDriver: AzureFilesVolumeDriver = AzureFilesVolumeDriver.IN_TREE,
+    private val storageTier: StorageTier = StorageTier.STANDARD
 ) {
 
     private val storageAccount = lazy {
         val storageName = instanceSpecificSuffix.toLowerCase()
-        azure.storageAccounts().getByResourceGroup(resourceGroup.name(), storageName)
-            ?: azure.storageAccounts().define(storageName)
+        val existing = azure.storageAccounts().getByResourceGroup(resourceGroup.name(), storageName)
+        if (existing != null) {
+            val existingTier = if (existing.kind() == Kind.FILE_STORAGE) StorageTier.PREMIUM else StorageTier.STANDARD
+            if (existingTier != storageTier) {
+                throw IllegalStateException("storage account $storageName already exists as $existingTier but $storageTier was requested")
+            }
+            existing
+        } else {
+            val definition = azure.storageAccounts().define(storageName)
                 .withRegion(resourceGroup.region())
                 .withExistingResourceGroup(resourceGroup)
-                .withGeneralPurposeAccountKind()
-                .create()
+            when (storageTier) {
+                StorageTier.STANDARD -> definition.withGeneralPurposeAccountKindV2().create()
+                StorageTier.PREMIUM -> definition.withFileStorageAccountKind().withSku(StorageAccountSkuType.PREMIUM_LRS).create()
+            }
+        }
+    }
+
+    //resolving the account up front lets it be provisioned alongside other resources rather than on first directory creation
+    suspend fun provisionStorageAccount(): StorageAccount {
+        return withContext(Dispatchers.IO) { storageAccount.value }
     }
 
     fun createSecrets(api: () -> ApiClient): AzureFileSecrets {
@@ -68,19 +99,24 @@ class AzureFileShareCreator(
 
     fun createDirectoryFor(
         directoryName: String,
-        api: () -> ApiClient
+        api: () -> ApiClient,
+        mountOptions: ShareMountOptions = ShareMountOptions.DEFAULT,
+        shareQuotaGB: Int? = null
     ): AzureFilesDirectory {
         val storageAccount = storageAccount.value
+        val quota = listOfNotNull(shareQuotaGB, storageTier.minimumShareQuotaGB).max()
         val cloudFileShare = getLegacyClient(storageAccount, directoryName)
-        val modernClient = getModernClient(storageAccount, directoryName)
+        val modernClient = getModernClient(storageAccount, directoryName, quota)
         val secrets = createSecrets(api)
+        val volumes = ShareVolumes(namespace, volumeDriver, mountOptions)
         return AzureFilesDirectory(
             directoryName,
             cloudFileShare.also { it.createIfNotExists() },
             modernClient,
             storageAccount,
-            secrets
-        )
+            secrets,
+            volumes
+        ).also { it.createPersistentVolumes(volumes, api) }
     }
 
 
@@ -89,7 +125,9 @@ class AzureFileShareCreator(
             id = id,
             namespace = namespace,
             instanceSpecificSuffix = instanceSpecificSuffix,
-            resourceGroup = resourceGroup.name()
+            resourceGroup = resourceGroup.name(),
+            volumeDriver = volumeDriver,
+            storageTier = storageTier
         )
     }
 
@@ -101,7 +139,9 @@ class AzureFileShareCreator(
                 mgmAzure,
                 resourceGroup,
                 namespace = p.namespace,
-                instanceSpecificSuffix = p.instanceSpecificSuffix
+                instanceSpecificSuffix = p.instanceSpecificSuffix,
+                volumeDriver = p.volumeDriver ?: AzureFilesVolumeDriver.IN_TREE,
+                storageTier = p.storageTier ?: StorageTier.STANDARD
             )
         }
     }
@@ -112,23 +152,35 @@ data class AzureFilesDirectory(
     val legacyClient: CloudFileShare,
     val modernClient: ShareClient,
     val storageAccount: StorageAccount,
-    val azureFileSecrets: AzureFileSecrets
+    val azureFileSecrets: AzureFileSecrets,
+    val volumes: ShareVolumes? = null
 ) {
     fun toPersistable(): PersistableShare {
         return PersistableShare(
             shareName = shareName,
             storageAccount = storageAccount.id(),
-            storageSecrets = azureFileSecrets
+            storageSecrets = azureFileSecrets,
+            volumes = volumes
         )
     }
 
     companion object {
-        fun fromPersistable(p: PersistableShare, mgmAzure: Azure): AzureFilesDirectory {
+        //mounts refer to the share's claims, so they are recreated (or found already present) whenever a share is restored
+        fun fromPersistable(
+            p: PersistableShare,
+            mgmAzure: Azure,
+            api: () -> ApiClient,
+            defaultVolumes: ShareVolumes? = null
+        ): AzureFilesDirectory {
             val storageAccount = mgmAzure.storageAccounts().getById(p.storageAccount)
             val shareName = p.shareName
             val legacyClient = getLegacyClient(storageAccount, shareName)
             val modernClient = getModernClient(storageAccount, shareName)
-            return AzureFilesDirectory(shareName, legacyClient, modernClient, storageAccount, p.storageSecrets)
+            val volumes = p.volumes ?: defaultVolumes
+                ?: throw IllegalStateException("share $shareName was persisted without its volumes and none were supplied")
+            return AzureFilesDirectory(shareName, legacyClient, modernClient, storageAccount, p.storageSecrets, volumes).also {
+                it.createPersistentVolumes(volumes, api)
+            }
         }
     }
 }
@@ -152,7 +204,7 @@ fun ShareFileClient.enforceExistence(): ShareFileClient {
     }
 }
 
-private fun getModernClient(storageAccount: StorageAccount, directoryName: String): ShareClient {
+private fun getModernClient(storageAccount: StorageAccount, directoryName: String, quotaGB: Int? = null): ShareClient {
     val fileEndPoint = storageAccount.endPoints().primary().file()
     val modernClient = ShareServiceClientBuilder()
         .endpoint(fileEndPoint)
@@ -161,7 +213,7 @@ private fun getModernClient(storageAccount: StorageAccount, directoryName: Strin
 
     return modernClient.getShareClient(directoryName).also {
         if (!it.exists()) {
-            it.create()
+            it.createWithResponse(null, quotaGB, null, Context.NONE)
         }
     }
 }
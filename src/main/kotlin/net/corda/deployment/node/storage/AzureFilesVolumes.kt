@@ -0,0 +1,143 @@
+package net.corda.deployment.node.storage
+
+import io.kubernetes.client.custom.Quantity
+import io.kubernetes.client.openapi.ApiClient
+import io.kubernetes.client.openapi.ApiException
+import io.kubernetes.client.openapi.apis.CoreV1Api
+import io.kubernetes.client.openapi.models.V1PersistentVolume
+import io.kubernetes.client.openapi.models.V1PersistentVolumeBuilder
+import io.kubernetes.client.openapi.models.V1PersistentVolumeClaimBuilder
+
+//1.16 clusters only ship the in-tree azureFile plugin, the csi driver must be installed separately before it can be selected
+enum class AzureFilesVolumeDriver {
+    IN_TREE,
+    CSI
+}
+
+//every share gets a read-only and a read-write volume so consumers that never write can cache attributes aggressively
+data class ShareMountOptions(
+    val readOnlyOptions: List<String>,
+    val readWriteOptions: List<String>
+) {
+    fun forAccess(readOnly: Boolean): List<String> {
+        return if (readOnly) readOnlyOptions else readWriteOptions
+    }
+
+    companion object {
+        //corda runs as 1000, nosharesock gives each mount its own smb connection rather than queueing behind other shares
+        private val COMMON_OPTIONS = listOf(
+            "dir_mode=0777",
+            "file_mode=0777",
+            "uid=1000",
+            "gid=1000",
+            "mfsymlinks",
+            "nosharesock",
+            "vers=3.0"
+        )
+
+        val DEFAULT = ShareMountOptions(
+            readOnlyOptions = COMMON_OPTIONS + listOf("cache=strict", "actimeo=600"),
+            readWriteOptions = COMMON_OPTIONS + listOf("cache=strict", "actimeo=1")
+        )
+    }
+}
+
+//everything needed to recreate a share's volumes, kept with the share so a restored share can still be mounted
+data class ShareVolumes(
+    val namespace: String,
+    val driver: AzureFilesVolumeDriver,
+    val mountOptions: ShareMountOptions
+)
+
+private const val AZURE_FILES_CSI_DRIVER = "file.csi.azure.com"
+private const val NOMINAL_SHARE_CAPACITY = "100Gi"
+private const val HTTP_CONFLICT = 409
+
+fun AzureFilesDirectory.claimName(readOnly: Boolean): String {
+    return "${storageAccount.name()}-$shareName-${if (readOnly) "ro" else "rw"}"
+}
+
+//volumes are statically bound to their share, the persistent volume name is cluster wide so it is the claim name plus namespace
+fun AzureFilesDirectory.createPersistentVolumes(volumes: ShareVolumes, api: () -> ApiClient) {
+    val namespace = volumes.namespace
+    val coreV1Api = CoreV1Api(api())
+    listOf(true, false).forEach { readOnly ->
+        val claimName = claimName(readOnly)
+        val volumeName = "$namespace-$claimName"
+        val accessMode = if (readOnly) "ReadOnlyMany" else "ReadWriteMany"
+        val volume = persistentVolume(
+            this, volumeName, namespace, readOnly, accessMode, volumes.driver, volumes.mountOptions.forAccess(readOnly)
+        )
+        val claim = V1PersistentVolumeClaimBuilder()
+            .withApiVersion("v1")
+            .withKind("PersistentVolumeClaim")
+            .withNewMetadata()
+            .withName(claimName)
+            .withNamespace(namespace)
+            .endMetadata()
+            .withNewSpec()
+            .withAccessModes(accessMode)
+            .withStorageClassName("")
+            .withVolumeName(volumeName)
+            .withNewResources()
+            .withRequests(mapOf("storage" to Quantity(NOMINAL_SHARE_CAPACITY)))
+            .endResources()
+            .endSpec()
+            .build()
+        ignoringConflict { coreV1Api.createPersistentVolume(volume, null, null, null) }
+        ignoringConflict { coreV1Api.createNamespacedPersistentVolumeClaim(namespace, claim, null, null, null) }
+    }
+}
+
+private fun persistentVolume(
+    share: AzureFilesDirectory,
+    volumeName: String,
+    namespace: String,
+    readOnly: Boolean,
+    accessMode: String,
+    driver: AzureFilesVolumeDriver,
+    mountOptions: List<String>
+): V1PersistentVolume {
+    val spec = V1PersistentVolumeBuilder()
+        .withApiVersion("v1")
+        .withKind("PersistentVolume")
+        .withNewMetadata()
+        .withName(volumeName)
+        .endMetadata()
+        .withNewSpec()
+        .withCapacity(mapOf("storage" to Quantity(NOMINAL_SHARE_CAPACITY)))
+        .withAccessModes(accessMode)
+        .withPersistentVolumeReclaimPolicy("Retain")
+        .withStorageClassName("")
+        .withMountOptions(mountOptions)
+    return when (driver) {
+        AzureFilesVolumeDriver.IN_TREE -> spec.withNewAzureFile()
+            .withShareName(share.shareName)
+            .withSecretName(share.azureFileSecrets.secretName)
+            .withSecretNamespace(namespace)
+            .withReadOnly(readOnly)
+            .endAzureFile()
+        AzureFilesVolumeDriver.CSI -> spec.withNewCsi()
+            .withDriver(AZURE_FILES_CSI_DRIVER)
+            .withVolumeHandle(volumeName)
+            .withReadOnly(readOnly)
+            .withVolumeAttributes(mapOf("shareName" to share.shareName))
+            .withNewNodeStageSecretRef()
+            .withName(share.azureFileSecrets.secretName)
+            .withNamespace(namespace)
+            .endNodeStageSecretRef()
+            .endCsi()
+    }.endSpec().build()
+}
+
+//volumes are immutable once bound, a re-run simply reuses what already exists
+private fun ignoringConflict(block: () -> Any) {
+    try {
+        block()
+    } catch (e: ApiException) {
+        if (e.code != HTTP_CONFLICT) {
+            println(e.responseBody)
+            throw e
+        }
+    }
+}
@@ -1,7 +1,7 @@
 #!/usr/bin/env bash
 (
   # shellcheck disable=SC2086
-  cd "${WORKING_DIR}" && java -jar /opt/corda/ha-utilities.jar configure-artemis \
+  cd "${WORKING_DIR}" && java -Xshare:auto -jar /opt/corda/ha-utilities.jar configure-artemis \
     --verbose \
     --logging-level=DEBUG \
     --install \
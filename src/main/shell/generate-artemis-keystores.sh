@@ -5,7 +5,7 @@ mkdir -p "${BRIDGE_STORES_DIR}"
 mkdir -p "${ARTEMIS_STORES_DIR}"
 (
   cd "${WORKING_DIR}" || exit 2
-  java -jar /opt/corda/ha-utilities.jar generate-internal-artemis-ssl-keystores --verbose \
+  java -Xshare:auto -jar /opt/corda/ha-utilities.jar generate-internal-artemis-ssl-keystores --verbose \
     -p "${ARTEMIS_STORE_PASS}" \
     -t "${ARTEMIS_TRUST_PASS}" \
     -o "${ORGANISATION}" \
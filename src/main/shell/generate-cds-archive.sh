@@ -0,0 +1,36 @@
+#!/usr/bin/env bash
+# jdk 8 can only share classes from the boot classpath, so a training run records which jdk classes the tool loads
+# beyond the default class list and the jvm's shared archive is regenerated to include them
+# usage: generate-cds-archive.sh <training seconds> <jar> [jar args...]
+set -euo pipefail
+TRAINING_SECONDS="$1"
+JAR="$2"
+shift 2
+JAVA_HOME="${JAVA_HOME:-$(dirname "$(dirname "$(readlink -f "$(command -v java)")")")}"
+DEFAULT_CLASS_LIST=$(find "${JAVA_HOME}" -name classlist)
+DEFAULT_CLASS_LIST="${DEFAULT_CLASS_LIST%%$'\n'*}"
+TRAINING_DIR=$(mktemp -d)
+TRAINING_LOG="${TRAINING_DIR}/training.log"
+TRAINED_CLASS_LIST="${TRAINING_DIR}/classlist"
+# servers never exit by themselves, so the run is stopped after the training period and its exit status is only reported
+# capsule jars relaunch in a child jvm, which reports its classes through the same stdout
+(
+  cd "${TRAINING_DIR}"
+  timeout "${TRAINING_SECONDS}" java -verbose:class -Dcapsule.jvm.args="-verbose:class" -jar "${JAR}" "$@" >"${TRAINING_LOG}" 2>&1
+) || echo "training run for ${JAR} exited with $?"
+{
+  cat "${DEFAULT_CLASS_LIST:-/dev/null}"
+  sed -n 's/^\[Loaded \([^ ]*\) from .*rt\.jar\]$/\1/p' "${TRAINING_LOG}" | tr '.' '/'
+} | sort -u >"${TRAINED_CLASS_LIST}"
+DEFAULT_CLASS_COUNT=$(sort -u "${DEFAULT_CLASS_LIST:-/dev/null}" | wc -l)
+TRAINED_CLASS_COUNT=$(wc -l <"${TRAINED_CLASS_LIST}")
+echo "training run for ${JAR} grew the class list from ${DEFAULT_CLASS_COUNT} to ${TRAINED_CLASS_COUNT} classes"
+if [ "${TRAINED_CLASS_COUNT}" -le "${DEFAULT_CLASS_COUNT}" ]; then
+  echo "training run for ${JAR} loaded no jdk classes beyond the default class list"
+  tail -n 50 "${TRAINING_LOG}"
+  exit 1
+fi
+java -Xshare:dump -XX:SharedClassListFile="${TRAINED_CLASS_LIST}"
+# some dump problems are only warnings, a jvm that requires sharing refuses to start without a usable archive
+java -Xshare:on -version
+rm -rf "${TRAINING_DIR}"
@@ -2,7 +2,7 @@
 mkdir -p "${WORKING_DIR}"
 (
   cd "${WORKING_DIR}" || exit 2
-  java -jar /opt/corda/ha-utilities.jar generate-internal-tunnel-ssl-keystores --verbose \
+  java -Xshare:auto -jar /opt/corda/ha-utilities.jar generate-internal-tunnel-ssl-keystores --verbose \
     -p "${TUNNEL_SSL_KEYSTORE_PASSWORD}" \
     -t "${TUNNEL_TRUSTSTORE_PASSWORD}" \
     -e "${TUNNEL_ENTRY_PASSWORD}" \
@@ -1,12 +1,47 @@
 #!/usr/bin/env bash
+set -e
 mkdir -p "${WORKING_DIR}"
+touch "${IMPORTED_NODES_MANIFEST}"
+# collect every node keystore passed to this job so they are imported in a single ha-utilities run
+NODE_KEYSTORES=()
+NODE_KEYSTORE_PASSWORDS=()
+NODE_IDS=()
+for ((i = 0; i < NODE_KEYSTORE_COUNT; i++)); do
+  NODE_ID_VAR="NODE_ID_${i}"
+  NODE_KEYSTORE_VAR="NODE_KEYSTORE_${i}"
+  NODE_KEYSTORE_PASSWORD_VAR="NODE_KEYSTORE_PASSWORD_${i}"
+  if grep -qx "${!NODE_ID_VAR}" "${IMPORTED_NODES_MANIFEST}"; then
+    echo "node ${!NODE_ID_VAR} already imported into bridge keystore, skipping"
+    continue
+  fi
+  NODE_IDS+=("${!NODE_ID_VAR}")
+  NODE_KEYSTORES+=("${!NODE_KEYSTORE_VAR}")
+  NODE_KEYSTORE_PASSWORDS+=("${!NODE_KEYSTORE_PASSWORD_VAR}")
+done
+if [ ${#NODE_KEYSTORES[@]} -eq 0 ]; then
+  echo "no new node keystores to import"
+  exit 0
+fi
+# the running bridge reads the keystore from the shared directory, so the import happens on a private copy
+# which is then swapped in with a single rename - the bridge never sees a partially written keystore
+STAGING_DIR=$(mktemp -d)
+STAGED_BRIDGE_KEYSTORE="${STAGING_DIR}/$(basename "${BRIDGE_KEYSTORE}")"
+if [ -f "${BRIDGE_KEYSTORE}" ]; then
+  cp "${BRIDGE_KEYSTORE}" "${STAGED_BRIDGE_KEYSTORE}"
+fi
 (
-  cd "${WORKING_DIR}" || exit 2
-  java -jar /opt/corda/ha-utilities.jar import-ssl-key --verbose \
-    --node-keystores="${NODE_KEYSTORE_TO_IMPORT}" \
-    --node-keystore-passwords="${NODE_KEYSTORE_PASSWORD}" \
-    --base-directory="${WORKING_DIR}" \
-    --bridge-keystore="${BRIDGE_KEYSTORE}" \
+  cd "${STAGING_DIR}" || exit 2
+  java -Xshare:auto -jar /opt/corda/ha-utilities.jar import-ssl-key --verbose \
+    --node-keystores "${NODE_KEYSTORES[@]}" \
+    --node-keystore-passwords "${NODE_KEYSTORE_PASSWORDS[@]}" \
+    --base-directory="${STAGING_DIR}" \
+    --bridge-keystore="${STAGED_BRIDGE_KEYSTORE}" \
     --bridge-keystore-password="${BRIDGE_KEYSTORE_PASSWORD}"
-  #  cp -v $(find . | grep ".jks") "${WORKING_DIR}"
 )
+cp "${STAGED_BRIDGE_KEYSTORE}" "${BRIDGE_KEYSTORE}.new"
+mv -f "${BRIDGE_KEYSTORE}.new" "${BRIDGE_KEYSTORE}"
+# only record nodes once their keys are in the live keystore
+cp "${IMPORTED_NODES_MANIFEST}" "${IMPORTED_NODES_MANIFEST}.new"
+printf '%s\n' "${NODE_IDS[@]}" >>"${IMPORTED_NODES_MANIFEST}.new"
+mv -f "${IMPORTED_NODES_MANIFEST}.new" "${IMPORTED_NODES_MANIFEST}"
+rm -rf "${STAGING_DIR}"
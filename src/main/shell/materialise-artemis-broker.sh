@@ -0,0 +1,22 @@
+#!/usr/bin/env bash
+set -e
+# copies the broker instance from the share onto the data volume so locking, logging and temp files never touch smb
+HASH_FILE="${BROKER_BASE_DIR}/.source-hash"
+SOURCE_HASH=$(cd "${BROKER_SOURCE_DIR}" && find bin etc -type f -print0 | sort -z | xargs -0 -r sha256sum | sha256sum | cut -d' ' -f1)
+CURRENT_HASH=$(cat "${HASH_FILE}" 2>/dev/null || true)
+if [ "${SOURCE_HASH}" == "${CURRENT_HASH}" ]; then
+  echo "broker instance at ${BROKER_BASE_DIR} is up to date (${SOURCE_HASH})"
+else
+  echo "materialising broker instance into ${BROKER_BASE_DIR} (${CURRENT_HASH:-none} -> ${SOURCE_HASH})"
+  mkdir -p "${BROKER_BASE_DIR}"
+  # runtime state is left in place, only the configuration and launch scripts are replaced
+  (cd "${BROKER_SOURCE_DIR}" && find . -mindepth 1 -maxdepth 1 ! -name data ! -name lock ! -name log ! -name tmp -print0) |
+    while IFS= read -r -d '' ENTRY; do
+      rm -rf "${BROKER_BASE_DIR:?}/${ENTRY}"
+      cp -R "${BROKER_SOURCE_DIR}/${ENTRY}" "${BROKER_BASE_DIR}/${ENTRY}"
+    done
+  chmod +x "${BROKER_BASE_DIR}"/bin/*
+  echo "${SOURCE_HASH}" >"${HASH_FILE}"
+fi
+mkdir -p "${BROKER_BASE_DIR}/log" "${BROKER_BASE_DIR}/tmp"
+echo "broker config ${SOURCE_HASH}" >/dev/termination-log || true
@@ -7,7 +7,7 @@ else
 fi
 
 (cd ${BASE_DIR} &&
-  java -jar /opt/corda/ha-utilities.jar node-registration \
+  java -Xshare:auto -jar /opt/corda/ha-utilities.jar node-registration \
     -b ${BASE_DIR} \
     -f ${CONFIG_FILE_PATH} \
     --network-root-truststore ${TRUST_ROOT_PATH} \
@@ -3,8 +3,9 @@
 set -u
 set -x
 
-java -Djava.security.egd=file:/dev/./urandom \
-  -Dcapsule.jvm.args="${JVM_ARGS}" \
+java -Xshare:auto \
+  -Djava.security.egd=file:/dev/./urandom \
+  -Dcapsule.jvm.args="-Xshare:auto ${JVM_ARGS}" \
   -jar /opt/corda/firewall.jar \
   --base-directory ${BASE_DIR} \
   --config-file=${CONFIG_FILE} \
@@ -0,0 +1,29 @@
+#!/usr/bin/env bash
+set -e
+# copies jars from the network shares onto pod local storage so the node never class loads over smb
+TOTAL_START=${EPOCHREALTIME/./}
+SUMMARY=""
+for TARGET_DIR in ${STAGED_DIRS}; do
+  SOURCE_DIR="${STAGING_SOURCE_DIR}${TARGET_DIR}"
+  START=${EPOCHREALTIME/./}
+  mkdir -p "${TARGET_DIR}"
+  cp -R "${SOURCE_DIR}/." "${TARGET_DIR}/"
+  # verify every staged jar against the share before handing the directory to the node
+  CHECKSUMS=$(mktemp)
+  (cd "${SOURCE_DIR}" && find . -type f -name '*.jar' -print0 | xargs -0 -r sha256sum) >"${CHECKSUMS}"
+  if [ -s "${CHECKSUMS}" ]; then
+    (cd "${TARGET_DIR}" && sha256sum -c "${CHECKSUMS}" >/dev/null) || {
+      echo "checksum verification failed for ${TARGET_DIR}"
+      exit 1
+    }
+  fi
+  JAR_COUNT=$(wc -l <"${CHECKSUMS}" | tr -d ' ')
+  KILOBYTES=$(du -sk "${TARGET_DIR}" | cut -f1)
+  rm -f "${CHECKSUMS}"
+  ELAPSED_MS=$(((${EPOCHREALTIME/./} - START) / 1000))
+  echo "staged ${JAR_COUNT} jars (${KILOBYTES}KB) into ${TARGET_DIR} in ${ELAPSED_MS}ms"
+  SUMMARY="${SUMMARY}${TARGET_DIR}=${JAR_COUNT} jars/${ELAPSED_MS}ms "
+done
+TOTAL_MS=$(((${EPOCHREALTIME/./} - TOTAL_START) / 1000))
+echo "jar staging completed in ${TOTAL_MS}ms"
+echo "jar staging ${SUMMARY}total=${TOTAL_MS}ms" >/dev/termination-log || true
@@ -0,0 +1,66 @@
+package net.corda.deployment.node;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class BridgeHaModeTest {
+
+    @Test
+    public void standaloneUsesInProcessElectionWithoutPorts() {
+        Assert.assertEquals("bully://localhost", BridgeHaMode.Standalone.INSTANCE.getHaConnectionString());
+        Assert.assertEquals(Collections.emptyList(), BridgeHaMode.Standalone.INSTANCE.getElectionPorts());
+        Assert.assertEquals(1, BridgeHaMode.Standalone.INSTANCE.getReplicas());
+    }
+
+    @Test
+    public void inClusterZookeeperConnectsToTheBridgeZookeeperService() {
+        BridgeHaMode.InClusterZookeeper haMode = new BridgeHaMode.InClusterZookeeper(3);
+        Assert.assertEquals("zk://bridge-zookeeper:2181", haMode.getHaConnectionString());
+        Assert.assertEquals(Collections.singletonList(2181), haMode.getElectionPorts());
+        Assert.assertEquals(3, haMode.getReplicas());
+    }
+
+    @Test
+    public void externalZookeeperPassesTheConnectionStringThrough() {
+        String connectionString = "zk://zk-0.example.com:2181,zk-1.example.com:2181/corda";
+        BridgeHaMode.ExternalZookeeper haMode = new BridgeHaMode.ExternalZookeeper(connectionString, 2);
+        Assert.assertEquals(connectionString, haMode.getHaConnectionString());
+    }
+
+    @Test
+    public void externalZookeeperElectionPortsAreTheDistinctPortsOfEveryServer() {
+        BridgeHaMode.ExternalZookeeper haMode = new BridgeHaMode.ExternalZookeeper("zk://zk-0:2181,zk-1:2182,zk-2:2181", 2);
+        Assert.assertEquals(Arrays.asList(2181, 2182), haMode.getElectionPorts());
+    }
+
+    @Test
+    public void externalZookeeperServerWithoutPortUsesTheDefaultClientPort() {
+        BridgeHaMode.ExternalZookeeper haMode = new BridgeHaMode.ExternalZookeeper("zk://zk-0,zk-1:2888", 2);
+        Assert.assertEquals(Arrays.asList(2181, 2888), haMode.getElectionPorts());
+    }
+
+    @Test
+    public void externalZookeeperChrootIsNotPartOfThePort() {
+        BridgeHaMode.ExternalZookeeper haMode = new BridgeHaMode.ExternalZookeeper("zk://zk-0:2182/corda/bridge", 2);
+        Assert.assertEquals(Collections.singletonList(2182), haMode.getElectionPorts());
+    }
+
+    @Test
+    public void externalZookeeperWithoutSchemeIsStillParsed() {
+        BridgeHaMode.ExternalZookeeper haMode = new BridgeHaMode.ExternalZookeeper("zk-0:2183", 2);
+        Assert.assertEquals(Collections.singletonList(2183), haMode.getElectionPorts());
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void externalZookeeperWithANonNumericPortIsRejected() {
+        new BridgeHaMode.ExternalZookeeper("zk://zk-0:client", 2).getElectionPorts();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroReplicasAreRejected() {
+        new BridgeHaMode.InClusterZookeeper(0);
+    }
+}
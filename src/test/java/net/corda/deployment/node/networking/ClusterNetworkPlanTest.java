@@ -0,0 +1,136 @@
+package net.corda.deployment.node.networking;
+
+import com.microsoft.azure.management.containerservice.ContainerServiceVMSizeTypes;
+import net.corda.deployment.node.kubernetes.ClusterPoolProfiles;
+import net.corda.deployment.node.kubernetes.ClusterTopology;
+import net.corda.deployment.node.kubernetes.NodePoolProfile;
+import net.corda.deployment.node.kubernetes.WorkloadPlacement;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class ClusterNetworkPlanTest {
+
+    private static ClusterPoolProfiles poolsWithNodePool(ContainerServiceVMSizeTypes vmSize, int maxCount, int maxPods) {
+        return new ClusterPoolProfiles(
+                Arrays.asList(
+                        new NodePoolProfile("dmzsystem", WorkloadPlacement.SYSTEM, ContainerServiceVMSizeTypes.STANDARD_D2S_V3, 1, 3, 30, 64),
+                        new NodePoolProfile("floats", WorkloadPlacement.FLOATS, ContainerServiceVMSizeTypes.STANDARD_F4S_V2, 1, 5, 30, 64)
+                ),
+                Arrays.asList(
+                        new NodePoolProfile("system", WorkloadPlacement.SYSTEM, ContainerServiceVMSizeTypes.STANDARD_D2S_V3, 1, 3, 30, 64),
+                        new NodePoolProfile("artemis", WorkloadPlacement.ARTEMIS, ContainerServiceVMSizeTypes.STANDARD_F4S_V2, 1, 3, 30, 64),
+                        new NodePoolProfile("nodes", WorkloadPlacement.NODES, vmSize, 1, maxCount, maxPods, 64),
+                        new NodePoolProfile("setup", WorkloadPlacement.SETUP, ContainerServiceVMSizeTypes.STANDARD_D2S_V3, 1, 5, 30, 64)
+                ),
+                ClusterTopology.REGIONAL
+        );
+    }
+
+    private static ClusterNetworkPlan plan(ClusterNetworkingMode mode, ClusterPoolProfiles pools) {
+        return new ClusterNetworkPlan(mode, pools);
+    }
+
+    @Test
+    public void defaultPoolsAreValidWithKubenet() {
+        plan(ClusterNetworkingMode.KUBENET, ClusterPoolProfiles.Companion.getDEFAULT()).validate();
+    }
+
+    @Test
+    public void defaultPoolsAreValidWithAzureCni() {
+        plan(ClusterNetworkingMode.AZURE_CNI, ClusterPoolProfiles.Companion.getDEFAULT()).validate();
+    }
+
+    @Test
+    public void kubenetNeedsOneAddressPerNodeWhereAzureCniNeedsOnePerPod() {
+        ClusterPoolProfiles pools = poolsWithNodePool(ContainerServiceVMSizeTypes.STANDARD_D8S_V3, 100, 110);
+        plan(ClusterNetworkingMode.KUBENET, pools).validate();
+        try {
+            plan(ClusterNetworkingMode.AZURE_CNI, pools).validate();
+            Assert.fail("101 nodes of 111 addresses each cannot fit in the azure cni internal subnet");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("internal subnet"));
+        }
+    }
+
+    @Test
+    public void kubenetSubnetTooSmallForTheNodeCountIsRejected() {
+        ClusterPoolProfiles pools = poolsWithNodePool(ContainerServiceVMSizeTypes.STANDARD_D8S_V3, 250, 30);
+        try {
+            plan(ClusterNetworkingMode.KUBENET, pools).validate();
+            Assert.fail("251 surge capable nodes plus the other pools cannot fit in a /24");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("251 usable addresses"));
+        }
+    }
+
+    @Test
+    public void latencySensitivePoolWithoutAcceleratedNetworkingIsRejectedWithAzureCni() {
+        ClusterPoolProfiles pools = poolsWithNodePool(ContainerServiceVMSizeTypes.STANDARD_D2S_V3, 10, 30);
+        try {
+            plan(ClusterNetworkingMode.AZURE_CNI, pools).validate();
+            Assert.fail("a two vcpu hyperthreaded size does not support accelerated networking");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("accelerated networking"));
+        }
+    }
+
+    @Test
+    public void acceleratedNetworkingIsNotRequiredWithKubenet() {
+        plan(ClusterNetworkingMode.KUBENET, poolsWithNodePool(ContainerServiceVMSizeTypes.STANDARD_D2S_V3, 10, 30)).validate();
+    }
+
+    @Test
+    public void burstableSizeIsRejectedWithAzureCni() {
+        ClusterPoolProfiles pools = poolsWithNodePool(ContainerServiceVMSizeTypes.STANDARD_B4MS, 10, 30);
+        try {
+            plan(ClusterNetworkingMode.AZURE_CNI, pools).validate();
+            Assert.fail("burstable sizes do not support accelerated networking");
+        } catch (IllegalArgumentException e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("accelerated networking"));
+        }
+    }
+
+    @Test
+    public void cidrIsNormalisedToItsNetworkAddress() {
+        Cidr cidr = Cidr.Companion.parse("192.168.1.77/24");
+        Assert.assertEquals("192.168.1.0/24", cidr.toString());
+        Assert.assertEquals(256L, cidr.getSize());
+    }
+
+    @Test
+    public void cidrContainmentAndOverlap() {
+        Cidr vnet = Cidr.Companion.parse("192.168.0.0/16");
+        Cidr internal = Cidr.Companion.parse("192.168.1.0/24");
+        Cidr dmz = Cidr.Companion.parse("192.168.2.0/24");
+        Assert.assertTrue(vnet.contains(internal));
+        Assert.assertFalse(internal.contains(vnet));
+        Assert.assertTrue(vnet.overlaps(dmz));
+        Assert.assertFalse(internal.overlaps(dmz));
+        Assert.assertFalse(Cidr.Companion.parse("10.244.0.0/16").overlaps(vnet));
+    }
+
+    @Test
+    public void cidrParseRejectsBadInput() {
+        for (String bad : Arrays.asList(
+                "192.168.0.0",
+                "192.168.0.0/16/8",
+                "192.168.0/16",
+                "192.168.0.0.0/16",
+                "192.168.0.256/16",
+                "192.168.-1.0/16",
+                "192.168.a.0/16",
+                "192.168.0.0/33",
+                "192.168.0.0/-1",
+                "192.168.0.0/",
+                "")) {
+            try {
+                Cidr.Companion.parse(bad);
+                Assert.fail("expected " + bad + " to be rejected");
+            } catch (IllegalArgumentException e) {
+                Assert.assertEquals("invalid cidr: " + bad, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package net.corda.deployment.node.networking;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+public class DmzIpAllocatorTest {
+
+    //an in memory config map, a concurrent deployer can be simulated by changing it between a read and a write
+    private static class InMemoryStore implements DmzIpReservationStore {
+        private Map<String, String> addressToOwner = new HashMap<>();
+        private String version = null;
+        private int writes = 0;
+        private int conflictsToSimulate = 0;
+        private final Map<String, String> concurrentReservations = new HashMap<>();
+
+        @Override
+        public DmzIpReservations read() {
+            return new DmzIpReservations(new HashMap<>(addressToOwner), version);
+        }
+
+        @Override
+        public boolean write(DmzIpReservations read, Map<String, String> updated) {
+            writes++;
+            if (conflictsToSimulate > 0) {
+                conflictsToSimulate--;
+                addressToOwner.putAll(concurrentReservations);
+                version = String.valueOf(writes) + "-concurrent";
+            }
+            if (!Objects.equals(read.getVersion(), version)) {
+                return false;
+            }
+            addressToOwner = new HashMap<>(updated);
+            version = String.valueOf(writes);
+            return true;
+        }
+    }
+
+    private static Map<String, String> mapOf(String... addressOwnerPairs) {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < addressOwnerPairs.length; i += 2) {
+            map.put(addressOwnerPairs[i], addressOwnerPairs[i + 1]);
+        }
+        return map;
+    }
+
+    private static Set<String> allUsableAddressesExcept(String... free) {
+        Set<String> inUse = new HashSet<>();
+        for (int host = 4; host <= 254; host++) {
+            inUse.add("192.168.2." + host);
+        }
+        inUse.removeAll(Arrays.asList(free));
+        return inUse;
+    }
+
+    @Test
+    public void newOwnersTakeTheLowestAddressNotInUseOrReserved() {
+        Map<String, String> reservations = DmzIpAllocator.Companion.assignAddresses(
+                Arrays.asList("float-a", "float-b"),
+                mapOf("192.168.2.4", "other"),
+                new HashSet<>(Collections.singletonList("192.168.2.5"))
+        );
+        Assert.assertEquals(mapOf("192.168.2.4", "other", "192.168.2.6", "float-a", "192.168.2.7", "float-b"), reservations);
+    }
+
+    @Test
+    public void ownersWithAReservationKeepIt() {
+        Map<String, String> existing = mapOf("192.168.2.9", "float-a");
+        Map<String, String> reservations = DmzIpAllocator.Companion.assignAddresses(
+                Arrays.asList("float-a", "float-a"),
+                existing,
+                Collections.emptySet()
+        );
+        Assert.assertEquals(existing, reservations);
+    }
+
+    @Test
+    public void reAllocatingReturnsTheSameAddressWithoutWriting() {
+        InMemoryStore store = new InMemoryStore();
+        DmzIpAllocator allocator = new DmzIpAllocator(Collections::emptySet, store);
+        String first = allocator.allocate("float-a");
+        String second = allocator.allocate("float-a");
+        Assert.assertEquals("192.168.2.4", first);
+        Assert.assertEquals(first, second);
+        Assert.assertEquals(1, store.writes);
+    }
+
+    @Test
+    public void exhaustedSubnetIsRejectedWithoutWriting() {
+        InMemoryStore store = new InMemoryStore();
+        DmzIpAllocator allocator = new DmzIpAllocator(() -> allUsableAddressesExcept("192.168.2.254"), store);
+        try {
+            allocator.allocate(Arrays.asList("float-a", "float-b"));
+            Assert.fail("only one address was free for two owners");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("Could not find an available IP within DMZ subnet", e.getMessage());
+        }
+        Assert.assertEquals(0, store.writes);
+    }
+
+    @Test
+    public void concurrentReservationIsRetriedAgainstTheNewReservations() {
+        InMemoryStore store = new InMemoryStore();
+        store.conflictsToSimulate = 1;
+        store.concurrentReservations.put("192.168.2.4", "float-of-another-deployer");
+        DmzIpAllocator allocator = new DmzIpAllocator(Collections::emptySet, store);
+
+        Assert.assertEquals("192.168.2.5", allocator.allocate("float-a"));
+        Assert.assertEquals(2, store.writes);
+        Assert.assertEquals(mapOf("192.168.2.4", "float-of-another-deployer", "192.168.2.5", "float-a"), store.addressToOwner);
+    }
+
+    @Test
+    public void continuousConflictsEventuallyGiveUp() {
+        InMemoryStore store = new InMemoryStore();
+        store.conflictsToSimulate = Integer.MAX_VALUE;
+        DmzIpAllocator allocator = new DmzIpAllocator(Collections::emptySet, store);
+        try {
+            allocator.allocate("float-a");
+            Assert.fail("every write conflicted");
+        } catch (IllegalStateException e) {
+            Assert.assertEquals("could not reserve dmz addresses after 10 attempts", e.getMessage());
+        }
+        Assert.assertEquals(10, store.writes);
+    }
+}
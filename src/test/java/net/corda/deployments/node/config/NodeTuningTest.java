@@ -0,0 +1,82 @@
+package net.corda.deployments.node.config;
+
+import net.corda.deployment.node.NodeResourceProfile;
+import net.corda.deployment.node.NodeTuning;
+import net.corda.deployment.node.database.DatabaseConfigParams;
+import net.corda.deployment.node.database.DatabaseType;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class NodeTuningTest {
+
+    private static final int MEGABYTE = 1024 * 1024;
+
+    private static DatabaseConfigParams databaseAllowing(int maxConnections) {
+        return new DatabaseConfigParams("jdbc:sqlserver://localhost:1433", "corda", "password", DatabaseType.MS_SQL, maxConnections, null);
+    }
+
+    @Test
+    public void smallProfileIsTunedForOneAndAHalfCores() {
+        NodeTuning tuning = NodeTuning.Companion.forResources(NodeResourceProfile.Companion.getSMALL(), databaseAllowing(120));
+        Assert.assertEquals(3, tuning.getFlowThreadPoolSize());
+        Assert.assertEquals(2, tuning.getRpcThreadPoolSize());
+        Assert.assertEquals(7, tuning.getDataSourceMaxPoolSize());
+        Assert.assertEquals(96, tuning.getTransactionCacheSizeMegaBytes());
+        Assert.assertEquals(48, tuning.getAttachmentContentCacheSizeMegaBytes());
+        Assert.assertEquals(256, tuning.getMaximumMessagingBatchSize());
+        Assert.assertEquals(2 * MEGABYTE, tuning.getP2pConfirmationWindowSize());
+    }
+
+    @Test
+    public void mediumProfileIsTunedForFourCores() {
+        NodeTuning tuning = NodeTuning.Companion.forResources(NodeResourceProfile.Companion.getMEDIUM(), databaseAllowing(120));
+        Assert.assertEquals(8, tuning.getFlowThreadPoolSize());
+        Assert.assertEquals(4, tuning.getRpcThreadPoolSize());
+        Assert.assertEquals(14, tuning.getDataSourceMaxPoolSize());
+        Assert.assertEquals(384, tuning.getTransactionCacheSizeMegaBytes());
+        Assert.assertEquals(192, tuning.getAttachmentContentCacheSizeMegaBytes());
+        Assert.assertEquals(256, tuning.getMaximumMessagingBatchSize());
+        Assert.assertEquals(4 * MEGABYTE, tuning.getP2pConfirmationWindowSize());
+    }
+
+    @Test
+    public void largeProfileIsTunedForEightCores() {
+        NodeTuning tuning = NodeTuning.Companion.forResources(NodeResourceProfile.Companion.getLARGE(), databaseAllowing(120));
+        Assert.assertEquals(16, tuning.getFlowThreadPoolSize());
+        Assert.assertEquals(8, tuning.getRpcThreadPoolSize());
+        Assert.assertEquals(26, tuning.getDataSourceMaxPoolSize());
+        Assert.assertEquals(768, tuning.getTransactionCacheSizeMegaBytes());
+        Assert.assertEquals(384, tuning.getAttachmentContentCacheSizeMegaBytes());
+        Assert.assertEquals(512, tuning.getMaximumMessagingBatchSize());
+        Assert.assertEquals(8 * MEGABYTE, tuning.getP2pConfirmationWindowSize());
+    }
+
+    @Test
+    public void poolSizeIsCappedAtTheDatabaseConnectionLimit() {
+        NodeTuning tuning = NodeTuning.Companion.forResources(NodeResourceProfile.Companion.getLARGE(), databaseAllowing(20));
+        Assert.assertEquals(16, tuning.getFlowThreadPoolSize());
+        Assert.assertEquals(8, tuning.getRpcThreadPoolSize());
+        Assert.assertEquals(20, tuning.getDataSourceMaxPoolSize());
+    }
+
+    @Test
+    public void poolSizeIsUnchangedWhenTheDatabaseLimitIsExactlyMet() {
+        NodeTuning tuning = NodeTuning.Companion.forResources(NodeResourceProfile.Companion.getMEDIUM(), databaseAllowing(14));
+        Assert.assertEquals(14, tuning.getDataSourceMaxPoolSize());
+    }
+
+    @Test
+    public void fractionalCoresAreRoundedUpWithAMinimumOfTwoFlowThreads() {
+        NodeTuning tuning = NodeTuning.Companion.forResources(new NodeResourceProfile(0.5, 1024), databaseAllowing(120));
+        Assert.assertEquals(2, tuning.getFlowThreadPoolSize());
+        Assert.assertEquals(1, tuning.getRpcThreadPoolSize());
+        Assert.assertEquals(5, tuning.getDataSourceMaxPoolSize());
+        Assert.assertEquals(48, tuning.getTransactionCacheSizeMegaBytes());
+        Assert.assertEquals(24, tuning.getAttachmentContentCacheSizeMegaBytes());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void profileWithTooLittleMemoryIsRejected() {
+        new NodeResourceProfile(1.0, 512);
+    }
+}